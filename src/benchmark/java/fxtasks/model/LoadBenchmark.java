@@ -0,0 +1,45 @@
+package fxtasks.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Loads generated stores of each {@link StoreType}. Note that the OS file cache is warm after the store is generated,
+ * so this measures the CPU side of loading more than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    @Param
+    public StoreType storeType;
+
+    private Path path;
+
+    @Setup
+    public void generate() throws IOException {
+        path = storeType.generate(size);
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        StoreType.delete(path);
+    }
+
+    @Benchmark
+    public LinkedTaskStore load() {
+        LinkedTaskStore store = storeType.open(path);
+        store.load();
+        store.close();
+        return store;
+    }
+}
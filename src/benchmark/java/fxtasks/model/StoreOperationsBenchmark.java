@@ -0,0 +1,110 @@
+package fxtasks.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The operations on a loaded store of each {@link StoreType}. The stores that write in the background only pay for
+ * handing the change over here; their writes are flushed at the end of every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StoreOperationsBenchmark {
+    @Param({ "1000", "10000" })
+    public int size;
+
+    @Param
+    public StoreType storeType;
+
+    private Path path;
+    private LinkedTaskStore store;
+    private List<TaskId> ids;
+    private int next = 0;
+    private final List<Task> created = Lists.newArrayList();
+
+    /** a new task for every call of {@link StoreOperationsBenchmark#remove(Removal)} */
+    @State(Scope.Benchmark)
+    public static class Removal {
+        private Task task;
+
+        @Setup(Level.Invocation)
+        public void create(StoreOperationsBenchmark benchmark) {
+            task = benchmark.store.create();
+        }
+    }
+
+    @Setup
+    public void load() throws IOException {
+        path = storeType.generate(size);
+        store = storeType.open(path);
+        store.load();
+        ids = Lists.newArrayList();
+        for (LinkedTask task : store.taskList) {
+            ids.add(task.id());
+        }
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        store.close();
+        StoreType.delete(path);
+    }
+
+    /** keep the store at its size, so every iteration measures the same */
+    @TearDown(Level.Iteration)
+    public void removeCreated() {
+        for (Task task : Lists.reverse(created)) {
+            store.remove(task);
+        }
+        created.clear();
+        store.flush();
+    }
+
+    /** the index of a task that is neither first nor last, a different one every time */
+    private int nextInnerIndex() {
+        next = (next + 1) % (size - 2);
+        return next + 1;
+    }
+
+    @Benchmark
+    public Task create() {
+        Task task = store.create();
+        created.add(task);
+        return task;
+    }
+
+    @Benchmark
+    public void remove(Removal removal) {
+        store.remove(removal.task);
+    }
+
+    @Benchmark
+    public void moveUp() {
+        store.moveUp(store.taskList.get(nextInnerIndex()));
+    }
+
+    @Benchmark
+    public void moveDown() {
+        store.moveDown(store.taskList.get(nextInnerIndex()));
+    }
+
+    @Benchmark
+    public LinkedTask getById() {
+        return store.getById(ids.get(nextInnerIndex()));
+    }
+
+    @Benchmark
+    public void saveOnPropertyChange() {
+        store.taskList.get(nextInnerIndex()).title("changed " + next);
+    }
+}
@@ -0,0 +1,80 @@
+package fxtasks.model;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import fxtasks.model.FileBasedTaskStore.LoadMode;
+
+/**
+ * The store implementations the benchmarks compare. The stores are generated in a temp directory; set the system
+ * property <code>fxtasks.benchmark.dir</code> to put them somewhere else, e.g. on a tmpfs.
+ */
+public enum StoreType {
+    FILE {
+        @Override
+        public LinkedTaskStore open(Path path) {
+            return new FileBasedTaskStore(path);
+        }
+    },
+    FILE_PARALLEL_LOAD {
+        @Override
+        public LinkedTaskStore open(Path path) {
+            return new FileBasedTaskStore(path).loadMode(LoadMode.PARALLEL);
+        }
+    },
+    FILE_BINARY {
+        @Override
+        public LinkedTaskStore open(Path path) {
+            return new FileBasedTaskStore(path).loadMode(LoadMode.PARALLEL).codec(new BinaryTaskCodec());
+        }
+    },
+    FILE_TRANSACTIONAL {
+        @Override
+        public LinkedTaskStore open(Path path) {
+            return new FileBasedTaskStore(path).transactional();
+        }
+    },
+    JOURNAL {
+        @Override
+        public LinkedTaskStore open(Path path) {
+            return new JournalTaskStore(path);
+        }
+    };
+
+    public abstract LinkedTaskStore open(Path path);
+
+    /** A new directory with a store of that many tasks */
+    public Path generate(int size) throws IOException {
+        String base = System.getProperty("fxtasks.benchmark.dir");
+        Path path = (base == null) ? Files.createTempDirectory("fxTasks-benchmark-") : Files.createTempDirectory(
+                Paths.get(base), "fxTasks-benchmark-");
+        LinkedTaskStore store = open(path);
+        List<LinkedTask> tasks = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            tasks.add(new LinkedTask().title("task " + i));
+        }
+        store.createAll(tasks);
+        store.close();
+        return path;
+    }
+
+    public static void delete(Path path) throws IOException {
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
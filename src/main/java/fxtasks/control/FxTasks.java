@@ -11,13 +11,23 @@ public class FxTasks extends Application {
         launch(FxTasks.class, args);
     }
 
+    private MainPaneController controller;
+
     @Override
     public void start(Stage stage) throws Exception {
-        Parent root = FXMLLoader.load(getClass().getResource("/fxTasks.fxml"));
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxTasks.fxml"));
+        Parent root = (Parent) loader.load();
+        controller = (MainPaneController) loader.getController();
         Scene scene = new Scene(root);
         scene.getStylesheets().add("/fxTasks.css");
         stage.setScene(scene);
         stage.setTitle("fxTasks");
         stage.show();
     }
+
+    @Override
+    public void stop() {
+        if (controller != null)
+            controller.close();
+    }
 }
@@ -1,7 +1,5 @@
 package fxtasks.control;
 
-import java.util.*;
-
 import javafx.scene.input.KeyEvent;
 
 public enum KeyModifier {
@@ -29,28 +27,55 @@ public enum KeyModifier {
             return event.isMetaDown();
         }
     },
+    /**
+     * META on a Mac, CONTROL elsewhere, like {@link KeyEvent#isShortcutDown()}. It's bound as that modifier, and never
+     * in the mask of an event, where that modifier is already.
+     */
     SHORTCUT {
         @Override
         public boolean matches(KeyEvent event) {
             return event.isShortcutDown();
         }
+
+        @Override
+        public KeyModifier platform() {
+            return MAC ? META : CONTROL;
+        }
     };
 
+    private static final boolean MAC = "Mac OS X".equals(System.getProperty("os.name"));
+    private static final KeyModifier[] VALUES = values();
+
+    /** the number of bits of a {@link #mask(KeyEvent) modifier mask} */
+    public static final int BITS = VALUES.length;
+
     public abstract boolean matches(KeyEvent event);
 
-    public static EnumSet<KeyModifier> setOf(KeyModifier[] keyModifiers) {
-        EnumSet<KeyModifier> set = EnumSet.noneOf(KeyModifier.class);
-        set.addAll(Arrays.asList(keyModifiers));
-        return set;
+    /** the modifier that is down when this one is */
+    public KeyModifier platform() {
+        return this;
+    }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public static int mask(KeyModifier... keyModifiers) {
+        int mask = 0;
+        for (KeyModifier modifier : keyModifiers) {
+            mask |= modifier.platform().bit();
+        }
+        return mask;
     }
 
-    public static EnumSet<KeyModifier> of(KeyEvent event) {
-        EnumSet<KeyModifier> set = EnumSet.noneOf(KeyModifier.class);
-        for (KeyModifier modifier : KeyModifier.values()) {
-            if (modifier.matches(event)) {
-                set.add(modifier);
+    /** the bits of all modifiers that are down; without allocating anything */
+    public static int mask(KeyEvent event) {
+        int mask = 0;
+        for (KeyModifier modifier : VALUES) {
+            if (modifier.platform() == modifier && modifier.matches(event)) {
+                mask |= modifier.bit();
             }
         }
-        return set;
+        return mask;
     }
 }
@@ -0,0 +1,132 @@
+package fxtasks.control;
+
+import static com.google.common.base.Charsets.*;
+import static fxtasks.control.KeyModifier.*;
+import static fxtasks.control.TaskPaneController.Action.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import javafx.scene.input.*;
+import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import fxtasks.control.TaskPaneController.Action;
+
+/**
+ * Which key does what to a task. The actions are kept in a table indexed by the key code and the
+ * {@link KeyModifier#mask(KeyEvent) modifier mask}, so a key event is dispatched without searching or allocating.
+ * <p>
+ * A keymap file is a properties file; each key is a key combination without spaces, like <code>ALT+UP</code>, using
+ * the names of the {@link KeyModifier}s and {@link KeyCode}s. Each value is the name of an {@link Action}, e.g.
+ * <code>MOVE_UP</code>, or empty to unbind that key. The keys that are not in the file keep their {@link #DEFAULT
+ * default} action.
+ */
+@Slf4j
+public class Keymap {
+    /** a system property with the path of a keymap file */
+    public static final String KEYMAP_PROPERTY = "fxtasks.keymap";
+
+    private static final Splitter PLUS = Splitter.on('+').trimResults();
+
+    public static final Keymap DEFAULT = new Keymap() //
+            .bind(FOCUS_PREVIOUS, KeyCode.UP) //
+            .bind(FOCUS_NEXT, KeyCode.DOWN) //
+            .bind(COLLAPSE, KeyCode.LEFT) //
+            .bind(EXPAND, KeyCode.RIGHT) //
+            .bind(FOCUS_PREVIOUS, KeyCode.UP, SHIFT) //
+            .bind(FOCUS_NEXT, KeyCode.DOWN, SHIFT) //
+            .bind(MOVE_UP, KeyCode.UP, ALT) //
+            .bind(MOVE_DOWN, KeyCode.DOWN, ALT) //
+            .bind(MOVE_OUT, KeyCode.LEFT, ALT) //
+            .bind(MOVE_IN, KeyCode.RIGHT, ALT);
+
+    /** The keymap from the file in the {@link #KEYMAP_PROPERTY} system property, or the {@link #DEFAULT} */
+    public static Keymap configured() {
+        String path = System.getProperty(KEYMAP_PROPERTY);
+        if (path == null)
+            return DEFAULT;
+        log.info("load keymap {}", path);
+        try {
+            return load(Paths.get(path));
+        } catch (IOException e) {
+            throw new RuntimeException("can't load keymap " + path, e);
+        }
+    }
+
+    public static Keymap load(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    public static Keymap load(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        Keymap keymap = DEFAULT.copy();
+        for (String combination : properties.stringPropertyNames()) {
+            keymap.bind(action(properties.getProperty(combination).trim()), combination);
+        }
+        return keymap;
+    }
+
+    private static Action action(String name) {
+        if (name.isEmpty())
+            return null;
+        try {
+            return Action.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown action [" + name + "]; known are " + Arrays.toString(Action
+                    .values()));
+        }
+    }
+
+    private final Action[] actions;
+
+    private Keymap() {
+        this(new Action[KeyCode.values().length << KeyModifier.BITS]);
+    }
+
+    private Keymap(Action[] actions) {
+        this.actions = actions;
+    }
+
+    private Keymap copy() {
+        return new Keymap(actions.clone());
+    }
+
+    private Keymap bind(Action action, KeyCode code, KeyModifier... modifiers) {
+        actions[index(code, KeyModifier.mask(modifiers))] = action;
+        return this;
+    }
+
+    private void bind(Action action, String combination) {
+        List<String> parts = Lists.newArrayList(PLUS.split(combination));
+        try {
+            KeyCode code = KeyCode.valueOf(parts.remove(parts.size() - 1));
+            KeyModifier[] modifiers = new KeyModifier[parts.size()];
+            for (int i = 0; i < modifiers.length; i++) {
+                modifiers[i] = KeyModifier.valueOf(parts.get(i));
+            }
+            bind(action, code, modifiers);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid key combination [" + combination + "]", e);
+        }
+    }
+
+    private static int index(KeyCode code, int modifierMask) {
+        return code.ordinal() << KeyModifier.BITS | modifierMask;
+    }
+
+    /** the action for that key event, or <code>null</code> if the key isn't bound */
+    public Action get(KeyEvent event) {
+        return get(event.getCode(), KeyModifier.mask(event));
+    }
+
+    Action get(KeyCode code, int modifierMask) {
+        return actions[index(code, modifierMask)];
+    }
+}
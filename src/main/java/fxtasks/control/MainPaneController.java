@@ -1,30 +1,76 @@
 package fxtasks.control;
 
 import java.net.URL;
-import java.util.ResourceBundle;
+import java.util.*;
+import java.util.concurrent.*;
 
+import javafx.application.Platform;
+import javafx.beans.value.*;
 import javafx.collections.*;
 import javafx.collections.ListChangeListener.Change;
 import javafx.fxml.*;
-import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.input.*;
-import javafx.scene.layout.*;
+import javafx.util.Callback;
 import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.collect.*;
+
 import fxtasks.model.*;
 
 @Slf4j
 public class MainPaneController implements Initializable {
+    /** the category that shows all tasks; tag ids are never empty */
+    private static final String ALL_TASKS = "";
+
     @FXML
     private MenuItem newTaskMenuItem;
 
+    /** the tags of the tasks, and {@link #ALL_TASKS} */
     @FXML
-    private AnchorPane categories;
+    private ListView<String> categories;
 
     @FXML
-    private VBox tasks;
+    private ListView<Task> tasks;
+
+    /** a copy of the tasks in the store, kept up to date by the change events */
+    private final ObservableList<Task> taskItems = FXCollections.observableArrayList();
+
+    private final ObservableList<String> categoryItems = FXCollections.observableArrayList(ALL_TASKS);
+
+    /** categories that have been created, but no task has their tag, yet */
+    private final Set<String> newCategories = Sets.newTreeSet();
+
+    /** the tasks of the selected category, from the tag index of the store; <code>null</code> for all tasks */
+    private TagFilter filter;
+    private final ObservableList<Task> filteredItems = FXCollections.observableArrayList();
+
+    /** the tasks that are shown expanded */
+    private final Set<Task> expandedTasks = Collections.newSetFromMap(new WeakHashMap<Task, Boolean>());
+
+    /** the cell that shows a task, if it's visible; weak, so neither discarded cells nor removed tasks leak */
+    private final Map<Task, TaskListCell> cellsByTask = new MapMaker().weakKeys().weakValues().makeMap();
+
+    private final Keymap keymap = Keymap.configured();
+
+    /** the tasks are being loaded, not created by the user */
+    private boolean loading = false;
+
+    /** the row to focus as soon as its cell shows up; -1 for none */
+    private int pendingFocus = -1;
+    private boolean pendingEdit = false;
+
+    /** applies the changes that others make to the files of the store */
+    private static final Executor UI_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            Platform.runLater(command);
+        }
+    };
 
-    private final TaskStore taskStore = new FileBasedTaskStore();
+    private final TaskStore taskStore = new FileBasedTaskStore().loadMode(FileBasedTaskStore.LoadMode.PARALLEL)
+            .writeBehind(500, TimeUnit.MILLISECONDS).transactional().watch(500, TimeUnit.MILLISECONDS, UI_THREAD)
+            .searchable(true);
 
     public enum ChangeType {
         PERMUTATE {
@@ -79,6 +125,33 @@ public class MainPaneController implements Initializable {
     public void initialize(URL url, ResourceBundle bundle) {
         newTaskMenuItem.setAccelerator(new KeyCodeCombination(KeyCode.N, KeyCombination.META_DOWN));
 
+        tasks.setItems(taskItems);
+        categories.setItems(categoryItems);
+        categories.setCellFactory(new Callback<ListView<String>, ListCell<String>>() {
+            @Override
+            public ListCell<String> call(ListView<String> listView) {
+                return new ListCell<String>() {
+                    @Override
+                    protected void updateItem(String category, boolean empty) {
+                        super.updateItem(category, empty);
+                        setText(empty ? null : ALL_TASKS.equals(category) ? "All Tasks" : category);
+                    }
+                };
+            }
+        });
+        categories.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<String>() {
+            @Override
+            public void changed(ObservableValue<? extends String> property, String oldValue, String newValue) {
+                showCategory(newValue);
+            }
+        });
+        tasks.setCellFactory(new Callback<ListView<Task>, ListCell<Task>>() {
+            @Override
+            public ListCell<Task> call(ListView<Task> listView) {
+                return new TaskListCell(MainPaneController.this, taskStore, keymap);
+            }
+        });
+
         taskStore.addListener(new ListChangeListener<Task>() {
             @Override
             public void onChanged(Change<? extends Task> change) {
@@ -92,32 +165,149 @@ public class MainPaneController implements Initializable {
                     case REMOVE:
                         removeTaskChange(change);
                         break;
+                    case PERMUTATE:
+                        permutateTaskChange(change);
+                        break;
                     default:
                         log.debug("unhandled change type {}", type);
                         break;
                     }
                 }
+                if (filter != null)
+                    filteredItems.setAll(taskStore.filter(filter));
             }
         });
-        taskStore.load();
-        collapseAllTasks();
+        loading = true;
+        try {
+            taskStore.load();
+        } finally {
+            loading = false;
+        }
+        tagsChanged();
+        categories.getSelectionModel().select(ALL_TASKS);
     }
 
+    /** Write all pending changes and the search index, and stop watching the files; when the application stops */
+    public void close() {
+        taskStore.close();
+    }
+
+    /** Create an empty category and select it; the tasks created in it get its tag */
     @FXML
     public void createCategory() {
-        log.debug("create category");
+        String category;
+        for (int i = 1;; i++) {
+            category = "Category " + i;
+            if (!categoryItems.contains(category))
+                break;
+        }
+        log.debug("create category {}", category);
+        newCategories.add(category);
+        tagsChanged();
+        categories.getSelectionModel().select(category);
+    }
+
+    private void showCategory(String category) {
+        if (category == null || ALL_TASKS.equals(category)) {
+            filter = null;
+            tasks.setItems(taskItems);
+        } else {
+            filter = TagFilter.allOf(category);
+            filteredItems.setAll(taskStore.filter(filter));
+            tasks.setItems(filteredItems);
+        }
+    }
+
+    /** the tags of a task have changed, so the categories or the tasks in them may have, too */
+    void tagsChanged() {
+        Set<String> tags = taskStore.tags();
+        newCategories.removeAll(tags);
+        List<String> items = Lists.newArrayList(ALL_TASKS);
+        items.addAll(Sets.newTreeSet(Sets.union(tags, newCategories)));
+        if (!items.equals(categoryItems)) {
+            String selected = categories.getSelectionModel().getSelectedItem();
+            categoryItems.setAll(items);
+            categories.getSelectionModel().select(items.contains(selected) ? selected : ALL_TASKS);
+        }
+        if (filter != null)
+            filteredItems.setAll(taskStore.filter(filter));
     }
 
     @FXML
     public void createTask() {
         collapseAllTasks();
-        taskStore.create().<String> getProperty("title").setValue("New Task");
+        Task task = taskStore.create();
+        task.<String> getProperty("title").setValue("New Task");
+        if (filter != null) {
+            task.<Set<String>> getProperty("tags").setValue(filter.tagIds());
+            tagsChanged();
+            expandedTasks.add(task);
+            focus(filteredItems.indexOf(task), true);
+        }
     }
 
     public void collapseAllTasks() {
-        for (Node node : tasks.getChildren()) {
-            TitledPane titledPane = (TitledPane) node;
-            titledPane.setExpanded(false);
+        for (Task task : ImmutableList.copyOf(expandedTasks)) {
+            TaskListCell cell = cellsByTask.get(task);
+            if (cell != null)
+                cell.collapse();
+        }
+        expandedTasks.clear();
+    }
+
+    boolean isExpanded(Task task) {
+        return expandedTasks.contains(task);
+    }
+
+    void expanded(Task task, boolean expanded) {
+        if (expanded)
+            expandedTasks.add(task);
+        else
+            expandedTasks.remove(task);
+    }
+
+    /**
+     * Select the task in that row and give it the focus; if it's not visible, scroll to it, and focus it when its cell
+     * shows up.
+     * 
+     * @param edit
+     *            focus the title field and select the title, instead of the pane
+     */
+    void focus(int index, boolean edit) {
+        tasks.getSelectionModel().clearAndSelect(index);
+        tasks.getFocusModel().focus(index);
+        TaskListCell cell = cellShowing(index);
+        if (cell == null) {
+            pendingFocus = index;
+            pendingEdit = edit;
+            tasks.scrollTo(index);
+        } else {
+            focus(cell, edit);
+        }
+    }
+
+    private void focus(TaskListCell cell, boolean edit) {
+        if (edit)
+            cell.editTitle();
+        else
+            cell.focusPane();
+    }
+
+    private TaskListCell cellShowing(int index) {
+        TaskListCell cell = cellsByTask.get(tasks.getItems().get(index));
+        return (cell != null && cell.getIndex() == index) ? cell : null;
+    }
+
+    /** a cell shows another task now, or none */
+    void shown(TaskListCell cell, Task previous) {
+        if (previous != null && cellsByTask.get(previous) == cell)
+            cellsByTask.remove(previous);
+        if (cell.isEmpty())
+            return;
+        cellsByTask.put(cell.getItem(), cell);
+        if (cell.getIndex() == pendingFocus) {
+            pendingFocus = -1;
+            focus(cell, pendingEdit);
         }
     }
 
@@ -132,26 +322,34 @@ public class MainPaneController implements Initializable {
     }
 
     private void addTaskChange(Change<? extends Task> change) {
-        int offset = change.getFrom();
-        for (Task addedTask : change.getAddedSubList()) {
-            log.debug("add {} at {}", addedTask, offset);
-            TitledPane taskPane = TaskPaneBuilder.create().task(addedTask).taskStore(taskStore).build();
-            tasks.getChildren().add(offset++, taskPane);
-            taskPane.requestFocus();
-            TextField titleField = TaskPaneController.of(taskPane).getTitleField();
-            taskPane.setExpanded(true);
-            titleField.selectAll();
-            titleField.requestFocus();
-        }
+        log.debug("add {} tasks at {}", change.getAddedSize(), change.getFrom());
+        taskItems.addAll(change.getFrom(), change.getAddedSubList());
+        // a filtered list is updated after all changes
+        if (loading || filter != null)
+            return;
+        expandedTasks.addAll(change.getAddedSubList());
+        focus(change.getTo() - 1, true);
+    }
+
+    /** replace only the tasks that have moved; the store reports its whole list as permutated */
+    private void permutateTaskChange(Change<? extends Task> change) {
+        int from = change.getFrom();
+        int to = change.getTo();
+        while (from < to && change.getPermutation(from) == from)
+            from++;
+        while (to > from && change.getPermutation(to - 1) == to - 1)
+            to--;
+        log.debug("permutate [{} to {})", from, to);
+        taskItems.remove(from, to);
+        taskItems.addAll(from, change.getList().subList(from, to));
     }
 
     private void removeTaskChange(Change<? extends Task> change) {
-        for (Task removedTask : change.getRemoved()) {
-            log.debug("remove {}", removedTask);
-            TaskPaneController pane = TaskPaneController.of(tasks, removedTask);
-            if (pane == null)
-                throw new IllegalStateException("no pane found for task: " + removedTask);
-            pane.remove();
+        log.debug("remove {}", change.getRemoved());
+        taskItems.remove(change.getFrom(), change.getFrom() + change.getRemovedSize());
+        expandedTasks.removeAll(change.getRemoved());
+        for (Task task : change.getRemoved()) {
+            cellsByTask.remove(task);
         }
     }
 }
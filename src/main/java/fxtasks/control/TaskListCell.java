@@ -0,0 +1,161 @@
+package fxtasks.control;
+
+import java.util.List;
+
+import javafx.beans.value.*;
+import javafx.event.EventHandler;
+import javafx.scene.control.*;
+import javafx.scene.input.*;
+import fxtasks.model.*;
+
+/**
+ * Shows a task in the task list. The list view only creates cells for the visible tasks, and reuses them for other
+ * tasks when scrolling; so every cell builds its {@link TitledPane} once and rebinds it to the task it shows. The
+ * expanded state belongs to the task, not to the pane; it's kept by the {@link MainPaneController}.
+ */
+class TaskListCell extends ListCell<Task> {
+    private static final String DROP_TARGET = "drop-target";
+
+    /** starts to drag the task of the cell, to drop it onto another one */
+    private static final EventHandler<MouseEvent> DRAG_DETECTED = new EventHandler<MouseEvent>() {
+        @Override
+        public void handle(MouseEvent event) {
+            TaskListCell cell = (TaskListCell) event.getSource();
+            if (cell.isEmpty())
+                return;
+            ClipboardContent content = new ClipboardContent();
+            content.putString(cell.getItem().id().asString());
+            cell.startDragAndDrop(TransferMode.MOVE).setContent(content);
+            event.consume();
+        }
+    };
+
+    private static final EventHandler<DragEvent> DRAG_OVER = new EventHandler<DragEvent>() {
+        @Override
+        public void handle(DragEvent event) {
+            if (isDropTarget(event))
+                event.acceptTransferModes(TransferMode.MOVE);
+            event.consume();
+        }
+    };
+
+    private static final EventHandler<DragEvent> DRAG_ENTERED = new EventHandler<DragEvent>() {
+        @Override
+        public void handle(DragEvent event) {
+            if (isDropTarget(event))
+                ((TaskListCell) event.getSource()).getStyleClass().add(DROP_TARGET);
+        }
+    };
+
+    private static final EventHandler<DragEvent> DRAG_EXITED = new EventHandler<DragEvent>() {
+        @Override
+        public void handle(DragEvent event) {
+            ((TaskListCell) event.getSource()).getStyleClass().remove(DROP_TARGET);
+        }
+    };
+
+    private static final EventHandler<DragEvent> DRAG_DROPPED = new EventHandler<DragEvent>() {
+        @Override
+        public void handle(DragEvent event) {
+            boolean dropped = isDropTarget(event);
+            if (dropped)
+                ((TaskListCell) event.getSource()).drop((TaskListCell) event.getGestureSource());
+            event.setDropCompleted(dropped);
+            event.consume();
+        }
+    };
+
+    /** another cell of the same list, with a task, is dragged over this one */
+    private static boolean isDropTarget(DragEvent event) {
+        TaskListCell target = (TaskListCell) event.getSource();
+        if (!(event.getGestureSource() instanceof TaskListCell))
+            return false;
+        TaskListCell source = (TaskListCell) event.getGestureSource();
+        return source != target && !source.isEmpty() && source.getListView() == target.getListView();
+    }
+
+    private final MainPaneController owner;
+    private final TaskStore taskStore;
+    private final TitledPane pane;
+    /** don't record the expanded state while showing another task */
+    private boolean updating = false;
+
+    public TaskListCell(MainPaneController owner, TaskStore taskStore, Keymap keymap) {
+        this.owner = owner;
+        this.taskStore = taskStore;
+        this.pane = TaskPaneBuilder.create().taskStore(taskStore).keymap(keymap).cell(this).build();
+        pane.expandedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> property, Boolean oldValue, Boolean newValue) {
+                if (!updating && getItem() != null)
+                    TaskListCell.this.owner.expanded(getItem(), newValue);
+            }
+        });
+        setOnDragDetected(DRAG_DETECTED);
+        setOnDragOver(DRAG_OVER);
+        setOnDragEntered(DRAG_ENTERED);
+        setOnDragExited(DRAG_EXITED);
+        setOnDragDropped(DRAG_DROPPED);
+    }
+
+    @Override
+    protected void updateItem(Task task, boolean empty) {
+        Task previous = getItem();
+        super.updateItem(task, empty);
+        updating = true;
+        try {
+            TaskPaneController.of(pane).show(empty ? null : task);
+            if (empty) {
+                setGraphic(null);
+            } else {
+                pane.setAnimated(false);
+                pane.setExpanded(owner.isExpanded(task));
+                pane.setAnimated(true);
+                setGraphic(pane);
+            }
+        } finally {
+            updating = false;
+        }
+        owner.shown(this, previous);
+    }
+
+    /**
+     * The task of that cell takes the place of the task of this one, or goes to the end, if this one is empty. The
+     * list may be filtered, so the store moves it next to a task, not to an index.
+     */
+    private void drop(TaskListCell source) {
+        Task dragged = source.getItem();
+        List<Task> items = getListView().getItems();
+        int index = isEmpty() ? items.size() - 1 : getIndex();
+        if (source.getIndex() < index)
+            taskStore.moveAfter(dragged, items.get(index));
+        else
+            taskStore.moveAfter(dragged, (index == 0) ? null : items.get(index - 1));
+        owner.focus(items.indexOf(dragged), false);
+    }
+
+    /** move the focus to the task that is that many rows away, if there is one */
+    void focusSibling(int delta) {
+        int index = getIndex() + delta;
+        if (index >= 0 && index < getListView().getItems().size())
+            owner.focus(index, false);
+    }
+
+    void focusPane() {
+        pane.requestFocus();
+    }
+
+    void editTitle() {
+        TextField titleField = TaskPaneController.of(pane).getTitleField();
+        titleField.selectAll();
+        titleField.requestFocus();
+    }
+
+    void tagsChanged() {
+        owner.tagsChanged();
+    }
+
+    void collapse() {
+        pane.setExpanded(false);
+    }
+}
@@ -1,5 +1,7 @@
 package fxtasks.control;
 
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.beans.value.*;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
@@ -11,7 +13,7 @@ import javafx.scene.paint.Color;
 
 import com.google.common.collect.ImmutableList;
 
-import fxtasks.model.*;
+import fxtasks.model.TaskStore;
 
 public class TaskPaneBuilder {
 
@@ -23,15 +25,32 @@ public class TaskPaneBuilder {
         }
     }
 
-    private static final DropShadowBuilder<?> SHADOW = DropShadowBuilder.create().offsetX(5).offsetY(5).blurType(
-            BlurType.THREE_PASS_BOX).color(Color.color(0, 0, 0, .3));
+    /** builds the details of a task the first time its pane is expanded; most panes never are */
+    private static class LazyContent implements ChangeListener<Boolean> {
+        @Override
+        public void changed(ObservableValue<? extends Boolean> property, Boolean oldValue, Boolean newValue) {
+            TitledPane pane = (TitledPane) ((ReadOnlyProperty<?>) property).getBean();
+            if (newValue && pane.getContent() == null) {
+                pane.setContent(buildContent());
+                TaskPaneController.of(pane).contentBuilt();
+            }
+        }
+    }
+
+    private static final EventHandler<KeyEvent> KEY_HANDLER = new TaskPaneKeyEventHandler();
+    private static final ChangeListener<Boolean> LAZY_CONTENT = new LazyContent();
+
+    /** effects are not nodes, so all panes can share one */
+    private static final DropShadow SHADOW = DropShadowBuilder.create().offsetX(5).offsetY(5).blurType(
+            BlurType.THREE_PASS_BOX).color(Color.color(0, 0, 0, .3)).build();
 
     public static TaskPaneBuilder create() {
         return new TaskPaneBuilder();
     }
 
-    private Task task;
     private TaskStore store;
+    private TaskListCell cell;
+    private Keymap keymap = Keymap.DEFAULT;
 
     public TaskPaneBuilder taskStore(TaskStore taskStore) {
         if (store != null)
@@ -42,29 +61,44 @@ public class TaskPaneBuilder {
         return this;
     }
 
-    public TaskPaneBuilder task(Task newTask) {
-        if (task != null)
-            throw new IllegalStateException("task already set");
-        if (newTask == null)
+    public TaskPaneBuilder cell(TaskListCell newCell) {
+        if (cell != null)
+            throw new IllegalStateException("cell already set");
+        if (newCell == null)
+            throw new NullPointerException();
+        this.cell = newCell;
+        return this;
+    }
+
+    public TaskPaneBuilder keymap(Keymap newKeymap) {
+        if (newKeymap == null)
             throw new NullPointerException();
-        this.task = newTask;
+        this.keymap = newKeymap;
         return this;
     }
 
+    /**
+     * The pane doesn't show a task, yet, and it's collapsed; see {@link TaskPaneController#show(fxtasks.model.Task)}
+     */
     public TitledPane build() {
-        if (task == null)
-            throw new IllegalStateException("set task before calling build()");
         if (store == null)
             throw new IllegalStateException("set task store before calling build()");
-        TitledPane taskPane = TitledPaneBuilder.create().animated(true).effect(SHADOW.build()) //
-        .content(buildContent()).graphic(buildChildren()) //
-        .onKeyReleased(new TaskPaneKeyEventHandler()).build();
-        taskPane.setUserData(new TaskPaneController(store, task, taskPane));
+        if (cell == null)
+            throw new IllegalStateException("set cell before calling build()");
+        TitledPane taskPane = TitledPaneBuilder.create().animated(true).expanded(false).effect(SHADOW) //
+        .graphic(buildChildren()) //
+        .onKeyReleased(KEY_HANDLER).build();
+        taskPane.expandedProperty().addListener(LAZY_CONTENT);
+        taskPane.setUserData(new TaskPaneController(store, taskPane, cell, keymap));
         return taskPane;
     }
 
-    private AnchorPane buildContent() {
-        return AnchorPaneBuilder.create().prefHeight(100).minWidth(200).children().build();
+    private static AnchorPane buildContent() {
+        TextField tags = TextFieldBuilder.create().promptText("Tags, separated by commas").build();
+        AnchorPane.setTopAnchor(tags, 0.0);
+        AnchorPane.setLeftAnchor(tags, 0.0);
+        AnchorPane.setRightAnchor(tags, 0.0);
+        return AnchorPaneBuilder.create().prefHeight(100).minWidth(200).children(tags).build();
     }
 
     private Node buildChildren() {
@@ -72,15 +106,12 @@ public class TaskPaneBuilder {
     }
 
     private TextField buildTitle() {
-        TextField title = TextFieldBuilder.create().build();
-        title.textProperty().bindBidirectional(task.<String> getProperty("title"));
-        return title;
+        return TextFieldBuilder.create().build();
     }
 
     private CheckBox buildDone() {
         CheckBox done = CheckBoxBuilder.create().build();
         HBox.setMargin(done, new Insets(3));
-        done.selectedProperty().bindBidirectional(task.<Boolean> getProperty("done"));
         return done;
     }
 }
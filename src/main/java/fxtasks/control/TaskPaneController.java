@@ -1,51 +1,40 @@
 package fxtasks.control;
 
-import static fxtasks.control.KeyModifier.*;
+import java.util.Set;
 
-import java.util.EnumSet;
-
-import javafx.collections.ObservableList;
-import javafx.scene.Node;
+import javafx.event.*;
 import javafx.scene.control.*;
 import javafx.scene.input.*;
 import javafx.scene.layout.Pane;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+
 import fxtasks.model.*;
 
 public class TaskPaneController {
+    private static final Joiner TAG_JOINER = Joiner.on(Tag.SEPARATOR + " ");
+    private static final Splitter TAG_SPLITTER = Splitter.on(Tag.SEPARATOR).trimResults().omitEmptyStrings();
+
     public static TaskPaneController of(TitledPane pane) {
         return (TaskPaneController) pane.getUserData();
     }
 
-    public static TaskPaneController of(Pane tasks, Task removedTask) {
-        for (Node child : tasks.getChildren()) {
-            TaskPaneController pane = TaskPaneController.of((TitledPane) child);
-            if (removedTask.equals(pane.task)) {
-                return pane;
-            }
-        }
-        return null;
-    }
-
-    private enum KeyBinding {
-        UP(KeyCode.UP) {
+    /** What a key can do with a task; the {@link Keymap} decides which key does what. */
+    enum Action {
+        FOCUS_PREVIOUS {
             @Override
             public void execute(TaskPaneController controller) {
-                int index = controller.getIndex();
-                if (index > 0) {
-                    controller.getSiblings().get(index - 1).requestFocus();
-                }
+                controller.cell.focusSibling(-1);
             }
         },
-        DOWN(KeyCode.DOWN) {
+        FOCUS_NEXT {
             @Override
             public void execute(TaskPaneController controller) {
-                int index = controller.getIndex();
-                if (index < controller.getSiblingCount() - 1) {
-                    controller.getSiblings().get(index + 1).requestFocus();
-                }
+                controller.cell.focusSibling(1);
             }
         },
-        LEFT(KeyCode.LEFT) {
+        COLLAPSE {
             @Override
             public void execute(TaskPaneController controller) {
                 if (controller.pane.isExpanded())
@@ -53,109 +42,104 @@ public class TaskPaneController {
                 // else con
             }
         },
-        RIGHT(KeyCode.RIGHT) {
+        EXPAND {
             @Override
             public void execute(TaskPaneController controller) {
                 controller.pane.setExpanded(true);
             }
         },
-
-        SHIFT_UP(KeyCode.UP, SHIFT) {
-            @Override
-            public void execute(TaskPaneController controller) {
-                int index = controller.getIndex();
-                if (index > 0) {
-                    controller.getSiblings().get(index - 1).requestFocus();
-                }
-            }
-        },
-        SHIFT_DOWN(KeyCode.DOWN, SHIFT) {
-            @Override
-            public void execute(TaskPaneController controller) {
-                int index = controller.getIndex();
-                if (index < controller.getSiblingCount() - 1) {
-                    controller.getSiblings().get(index + 1).requestFocus();
-                }
-            }
-        },
-
-        ALT_UP(KeyCode.UP, ALT) {
+        MOVE_UP {
             @Override
             public void execute(TaskPaneController controller) {
                 controller.store.moveUp(controller.task);
             }
         },
-        ALT_DOWN(KeyCode.DOWN, ALT) {
+        MOVE_DOWN {
             @Override
             public void execute(TaskPaneController controller) {
                 controller.store.moveDown(controller.task);
             }
         },
-        ALT_LEFT(KeyCode.LEFT, ALT) {
+        MOVE_OUT {
             @Override
             public void execute(TaskPaneController controller) {
                 controller.store.moveOut(controller.task);
             }
         },
-        ALT_RIGHT(KeyCode.RIGHT, ALT) {
+        MOVE_IN {
             @Override
             public void execute(TaskPaneController controller) {
                 controller.store.moveIn(controller.task);
             }
-        },
-        ;
-
-        public final KeyCode code;
-        public final EnumSet<KeyModifier> keyModifiers;
-
-        private KeyBinding(KeyCode code, KeyModifier... keyModifiers) {
-            this.code = code;
-            this.keyModifiers = KeyModifier.setOf(keyModifiers);
-        }
-
-        public boolean matches(KeyEvent event) {
-            return code.equals(event.getCode()) && KeyModifier.of(event).equals(keyModifiers);
-        }
+        };
 
         public abstract void execute(TaskPaneController controller);
     }
 
-    private final Task task;
     private final TaskStore store;
     private final TitledPane pane;
+    private final TaskListCell cell;
+    private final Keymap keymap;
+    /** the task the pane shows now; <code>null</code> while the cell is empty */
+    private Task task;
 
-    public TaskPaneController(TaskStore store, Task task, TitledPane pane) {
+    public TaskPaneController(TaskStore store, TitledPane pane, TaskListCell cell, Keymap keymap) {
         this.store = store;
-        this.task = task;
         this.pane = pane;
+        this.cell = cell;
+        this.keymap = keymap;
     }
 
-    public void handle(KeyEvent event) {
-        for (KeyBinding binding : KeyBinding.values()) {
-            if ("KEY_RELEASED".equals(event.getEventType().getName()) && binding.matches(event)) {
-                binding.execute(this);
-                return;
-            }
+    /** bind the pane to that task instead of the one it showed before */
+    public void show(Task newTask) {
+        if (task != null) {
+            getTitleField().textProperty().unbindBidirectional(task.<String> getProperty("title"));
+            getDoneBox().selectedProperty().unbindBidirectional(task.<Boolean> getProperty("done"));
+        }
+        task = newTask;
+        if (task != null) {
+            getTitleField().textProperty().bindBidirectional(task.<String> getProperty("title"));
+            getDoneBox().selectedProperty().bindBidirectional(task.<Boolean> getProperty("done"));
         }
+        showTags();
     }
 
-    protected int getIndex() {
-        ObservableList<Node> siblings = getSiblings();
-        for (int i = 0; i < siblings.size(); i++) {
-            if (pane == siblings.get(i)) {
-                return i;
+    /** the details have been built, on the first expand */
+    void contentBuilt() {
+        getTagsField().setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                commitTags();
             }
-        }
-        throw new IllegalStateException();
+        });
+        showTags();
     }
 
-    protected int getSiblingCount() {
-        return getSiblings().size();
+    private void showTags() {
+        TextField tagsField = getTagsField();
+        if (tagsField != null)
+            tagsField.setText((task == null) ? "" : TAG_JOINER.join(task.<Set<String>> getProperty("tags").getValue()));
     }
 
-    protected ObservableList<Node> getSiblings() {
-        Pane parent = (Pane) pane.getParent();
-        return parent.getChildren();
+    /** the tags are only changed on enter, so the categories don't follow every key stroke */
+    private void commitTags() {
+        if (task == null)
+            return;
+        Set<String> tags = Sets.newTreeSet();
+        for (String tagId : TAG_SPLITTER.split(getTagsField().getText())) {
+            tags.add(Tag.withId(tagId).id());
+        }
+        task.<Set<String>> getProperty("tags").setValue(ImmutableSortedSet.copyOf(tags));
+        showTags();
+        cell.tagsChanged();
+    }
+
+    public void handle(KeyEvent event) {
+        if (task == null || event.getEventType() != KeyEvent.KEY_RELEASED)
+            return;
+        Action action = keymap.get(event);
+        if (action != null)
+            action.execute(this);
     }
 
     public TextField getTitleField() {
@@ -163,8 +147,14 @@ public class TaskPaneController {
         return (TextField) graphic.getChildren().get(0);
     }
 
-    public boolean remove() {
-        Pane parent = (Pane) pane.getParent();
-        return parent.getChildren().remove(pane);
+    public CheckBox getDoneBox() {
+        Pane graphic = (Pane) pane.getGraphic();
+        return (CheckBox) graphic.getChildren().get(1);
+    }
+
+    /** <code>null</code> until the pane is expanded the first time */
+    public TextField getTagsField() {
+        Pane content = (Pane) pane.getContent();
+        return (content == null) ? null : (TextField) content.getChildren().get(0);
     }
 }
@@ -1,91 +1,178 @@
 package fxtasks.model;
 
-import java.util.Map;
+import java.util.*;
 
 import javafx.beans.InvalidationListener;
 import javafx.beans.property.*;
+import javafx.beans.value.*;
 
-import javax.xml.bind.annotation.*;
+import lombok.extern.slf4j.Slf4j;
 
-import com.google.common.collect.Maps;
+import com.google.common.base.Objects;
+import com.google.common.collect.*;
 
 /**
- * Fluent, but "Straight forward" JavaFX style bean, that's JAXB-marshallable.
+ * Fluent, but "Straight forward" JavaFX style bean. The values are kept in plain fields; the JavaFX properties are
+ * only created when somebody asks for them, e.g. to bind them to a control, and from then on they hold the value. The
+ * {@link TaskCodec}s read and write all of its properties generically by name.
  */
-@XmlRootElement
+@Slf4j
 abstract class AbstractTask implements Task {
+    static final String TITLE = "title";
+    static final String DONE = "done";
+    static final String TAGS = "tags";
 
-    private final Map<String, Property<?>> properties = Maps.newTreeMap();
+    private static final Set<String> PROPERTY_NAMES = ImmutableSortedSet.of(TITLE, DONE, TAGS);
+    private static final Set<String> NO_TAGS = ImmutableSortedSet.of();
+    private static final InvalidationListener[] NO_LISTENERS = {};
 
-    public AbstractTask() {
-        properties.put("title", new SimpleStringProperty(this, "title"));
-        properties.put("done", new SimpleBooleanProperty(this, "done"));
+    private String title;
+    private boolean done;
+    /** the ids of the {@link Tag}s, sorted */
+    private Set<String> tags = NO_TAGS;
 
-        for (Property<?> property : properties.values()) {
-            property.addListener(new LogChangeListener(property.getName()));
-        }
-    }
+    private StringProperty titleProperty;
+    private BooleanProperty doneProperty;
+    private ObjectProperty<Set<String>> tagsProperty;
+
+    /** copied on write; tasks usually have only the listener of their store */
+    private InvalidationListener[] listeners = NO_LISTENERS;
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> Property<T> getProperty(String name) {
-        return (Property<T>) properties.get(name);
+        switch (name) {
+        case TITLE:
+            if (titleProperty == null) {
+                titleProperty = new SimpleStringProperty(this, TITLE, title);
+                titleProperty.addListener(propertyListener());
+                title = null;
+            }
+            return (Property<T>) titleProperty;
+        case DONE:
+            if (doneProperty == null) {
+                doneProperty = new SimpleBooleanProperty(this, DONE, done);
+                doneProperty.addListener(propertyListener());
+            }
+            return (Property<T>) doneProperty;
+        case TAGS:
+            if (tagsProperty == null) {
+                tagsProperty = new SimpleObjectProperty<>(this, TAGS, tags);
+                tagsProperty.addListener(propertyListener());
+            }
+            return (Property<T>) tagsProperty;
+        default:
+            return null;
+        }
     }
 
-    // TODO generify the JAXB stuff
-
-    @XmlElement
-    private String getTitle() {
-        return getTitleProperty().getValue();
+    /** forwards the changes of a JavaFX property, once it's created */
+    private ChangeListener<Object> propertyListener() {
+        return new ChangeListener<Object>() {
+            @Override
+            public void changed(ObservableValue<?> property, Object oldValue, Object newValue) {
+                AbstractTask.this.changed(((Property<?>) property).getName(), oldValue, newValue);
+            }
+        };
     }
 
-    // required for JAXB
-    @SuppressWarnings("unused")
-    private void setTitle(String title) {
-        getTitleProperty().setValue(title);
+    /** the names of all properties, in a stable order */
+    Set<String> propertyNames() {
+        return PROPERTY_NAMES;
     }
 
-    private Property<String> getTitleProperty() {
-        return this.<String> getProperty("title");
+    PropertyType propertyType(String name) {
+        switch (name) {
+        case TITLE:
+            return PropertyType.STRING;
+        case DONE:
+            return PropertyType.BOOLEAN;
+        case TAGS:
+            return PropertyType.TAGS;
+        default:
+            throw new IllegalArgumentException("unknown property " + name);
+        }
     }
 
-    @XmlElement
-    private boolean getDone() {
-        return getDoneProperty().getValue();
+    /** the value of the property, without creating the JavaFX property */
+    Object value(String name) {
+        switch (name) {
+        case TITLE:
+            return (titleProperty == null) ? title : titleProperty.get();
+        case DONE:
+            return (doneProperty == null) ? done : doneProperty.get();
+        case TAGS:
+            return (tagsProperty == null) ? tags : tagsProperty.get();
+        default:
+            throw new IllegalArgumentException("unknown property " + name);
+        }
     }
 
-    // required for JAXB
-    @SuppressWarnings("unused")
-    private void setDone(boolean done) {
-        getDoneProperty().setValue(done);
+    void value(String name, Object value) {
+        switch (name) {
+        case TITLE:
+            if (titleProperty != null) {
+                titleProperty.set((String) value);
+            } else if (!Objects.equal(title, value)) {
+                String oldValue = title;
+                title = (String) value;
+                changed(TITLE, oldValue, value);
+            }
+            break;
+        case DONE:
+            if (doneProperty != null) {
+                doneProperty.set((Boolean) value);
+            } else if (done != (Boolean) value) {
+                done = (Boolean) value;
+                changed(DONE, !done, done);
+            }
+            break;
+        case TAGS:
+            @SuppressWarnings("unchecked")
+            Set<String> newTags = ImmutableSortedSet.copyOf((Collection<String>) value);
+            if (tagsProperty != null) {
+                tagsProperty.set(newTags);
+            } else if (!tags.equals(newTags)) {
+                Set<String> oldValue = tags;
+                tags = newTags;
+                changed(TAGS, oldValue, newTags);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown property " + name);
+        }
     }
 
-    private Property<Boolean> getDoneProperty() {
-        return this.<Boolean> getProperty("done");
+    private void changed(String name, Object oldValue, Object newValue) {
+        if (log.isDebugEnabled())
+            log.debug("{}: {} -> {}", new Object[] { name, oldValue, newValue });
+        for (InvalidationListener listener : listeners) {
+            listener.invalidated(this);
+        }
     }
 
     @Override
     public void addListener(InvalidationListener invalidationListener) {
-        for (Property<?> property : properties.values()) {
-            property.addListener(invalidationListener);
-        }
+        InvalidationListener[] more = Arrays.copyOf(listeners, listeners.length + 1);
+        more[listeners.length] = invalidationListener;
+        listeners = more;
     }
 
     @Override
     public void removeListener(InvalidationListener invalidationListener) {
-        for (Property<?> property : properties.values()) {
-            property.removeListener(invalidationListener);
-        }
+        List<InvalidationListener> remaining = Lists.newArrayList(listeners);
+        if (remaining.remove(invalidationListener))
+            listeners = remaining.isEmpty() ? NO_LISTENERS : remaining.toArray(NO_LISTENERS);
     }
 
     @Override
     public String toString() {
         StringBuilder out = new StringBuilder(getClass().getSimpleName());
         out.append('[');
-        for (Property<?> property : properties.values()) {
-            out.append(property.getName());
+        for (String name : PROPERTY_NAMES) {
+            out.append(name);
             out.append('=');
-            out.append(property.getValue());
+            out.append(value(name));
         }
         out.append(']');
         return out.toString();
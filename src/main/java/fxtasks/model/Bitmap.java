@@ -0,0 +1,383 @@
+package fxtasks.model;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative ints, in the style of Roaring bitmaps: the values are split into chunks of 65536 by
+ * their high 16 bits, and every chunk keeps its low 16 bits either as a sorted array, while it's sparse, or as a plain
+ * bitmap, once it has more than {@link #ARRAY_MAX} values. Set operations work chunk by chunk, and never look at a
+ * single bit where a whole word will do.
+ * <p>
+ * The set operations return new bitmaps; only {@link #add(int)} and {@link #remove(int)} modify a bitmap.
+ */
+class Bitmap {
+    /** a chunk with more values uses more memory as an array than as a bitmap */
+    static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 65536 / 64;
+
+    /** the low 16 bits of the values of one chunk */
+    private abstract static class Chunk {
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        /** this chunk with that value; may be this chunk */
+        abstract Chunk add(char low);
+
+        /** this chunk without that value; may be this chunk */
+        abstract Chunk remove(char low);
+
+        abstract long[] words();
+
+        /** write the values, with that high part, to the array at that offset; return the new offset */
+        abstract int toArray(int high, int[] values, int offset);
+
+        abstract Chunk copy();
+    }
+
+    private static final class ArrayChunk extends Chunk {
+        char[] values;
+        int size;
+
+        ArrayChunk(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        @Override
+        Chunk add(char low) {
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index >= 0)
+                return this;
+            if (size == ARRAY_MAX)
+                return new BitmapChunk(words(), size).add(low);
+            index = -index - 1;
+            if (size == values.length)
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, size * 2)));
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = low;
+            size++;
+            return this;
+        }
+
+        @Override
+        Chunk remove(char low) {
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, size - index - 1);
+                size--;
+            }
+            return this;
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < size; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        @Override
+        int toArray(int high, int[] result, int offset) {
+            for (int i = 0; i < size; i++) {
+                result[offset++] = high << 16 | values[i];
+            }
+            return offset;
+        }
+
+        @Override
+        Chunk copy() {
+            return new ArrayChunk(Arrays.copyOf(values, size), size);
+        }
+    }
+
+    private static final class BitmapChunk extends Chunk {
+        final long[] words;
+        int cardinality;
+
+        BitmapChunk(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & 1L << low) != 0;
+        }
+
+        @Override
+        Chunk add(char low) {
+            if (!contains(low)) {
+                words[low >>> 6] |= 1L << low;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Chunk remove(char low) {
+            if (!contains(low))
+                return this;
+            words[low >>> 6] &= ~(1L << low);
+            cardinality--;
+            return (cardinality <= ARRAY_MAX) ? toArrayChunk() : this;
+        }
+
+        private ArrayChunk toArrayChunk() {
+            char[] values = new char[cardinality];
+            int size = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[size++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayChunk(values, size);
+        }
+
+        @Override
+        long[] words() {
+            return words;
+        }
+
+        @Override
+        int toArray(int high, int[] result, int offset) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    result[offset++] = high << 16 | i << 6 | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        Chunk copy() {
+            return new BitmapChunk(words.clone(), cardinality);
+        }
+    }
+
+    private enum Operation {
+        AND {
+            @Override
+            long apply(long left, long right) {
+                return left & right;
+            }
+        },
+        OR {
+            @Override
+            long apply(long left, long right) {
+                return left | right;
+            }
+        },
+        AND_NOT {
+            @Override
+            long apply(long left, long right) {
+                return left & ~right;
+            }
+        };
+
+        abstract long apply(long left, long right);
+
+        Chunk apply(Chunk left, Chunk right) {
+            if (this != OR && left instanceof ArrayChunk)
+                return filter((ArrayChunk) left, right);
+            if (this == AND && right instanceof ArrayChunk)
+                return filter((ArrayChunk) right, left);
+            long[] leftWords = left.words();
+            long[] rightWords = right.words();
+            long[] words = new long[WORDS];
+            int cardinality = 0;
+            for (int i = 0; i < WORDS; i++) {
+                words[i] = apply(leftWords[i], rightWords[i]);
+                cardinality += Long.bitCount(words[i]);
+            }
+            if (cardinality == 0)
+                return null;
+            BitmapChunk result = new BitmapChunk(words, cardinality);
+            return (cardinality <= ARRAY_MAX) ? result.toArrayChunk() : result;
+        }
+
+        /** the values of a sparse chunk that are (for AND) or are not (for AND_NOT) in the other chunk */
+        private Chunk filter(ArrayChunk sparse, Chunk other) {
+            boolean keep = (this == AND);
+            char[] values = new char[sparse.size];
+            int size = 0;
+            for (int i = 0; i < sparse.size; i++) {
+                if (other.contains(sparse.values[i]) == keep)
+                    values[size++] = sparse.values[i];
+            }
+            return (size == 0) ? null : new ArrayChunk(values, size);
+        }
+    }
+
+    /** the high parts of the values, sorted, and their chunks */
+    private char[] keys;
+    private Chunk[] chunks;
+    private int size;
+
+    Bitmap() {
+        this(new char[4], new Chunk[4], 0);
+    }
+
+    private Bitmap(char[] keys, Chunk[] chunks, int size) {
+        this.keys = keys;
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    static Bitmap of(int... values) {
+        Bitmap bitmap = new Bitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    public boolean contains(int value) {
+        checkArgument(value >= 0, "negative value %s", value);
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && chunks[index].contains((char) value);
+    }
+
+    public void add(int value) {
+        checkArgument(value >= 0, "negative value %s", value);
+        char high = (char) (value >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, high);
+        if (index >= 0) {
+            chunks[index] = chunks[index].add((char) value);
+            return;
+        }
+        index = -index - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        keys[index] = high;
+        chunks[index] = new ArrayChunk(new char[] { (char) value }, 1);
+        size++;
+    }
+
+    public void remove(int value) {
+        checkArgument(value >= 0, "negative value %s", value);
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if (index < 0)
+            return;
+        Chunk chunk = chunks[index].remove((char) value);
+        if (chunk.cardinality() > 0) {
+            chunks[index] = chunk;
+            return;
+        }
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+        chunks[--size] = null;
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += chunks[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Bitmap and(Bitmap other) {
+        Bitmap result = new Bitmap(new char[Math.max(1, Math.min(size, other.size))],
+                new Chunk[Math.max(1, Math.min(size, other.size))], 0);
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], Operation.AND.apply(chunks[i++], other.chunks[j++]));
+            }
+        }
+        return result;
+    }
+
+    public Bitmap or(Bitmap other) {
+        Bitmap result = new Bitmap(new char[Math.max(1, size + other.size)], new Chunk[Math.max(1, size + other.size)],
+                0);
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && keys[i] < other.keys[j]) {
+                result.append(keys[i], chunks[i++].copy());
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.chunks[j++].copy());
+            } else {
+                result.append(keys[i], Operation.OR.apply(chunks[i++], other.chunks[j++]));
+            }
+        }
+        return result;
+    }
+
+    public Bitmap andNot(Bitmap other) {
+        Bitmap result = new Bitmap(new char[Math.max(1, size)], new Chunk[Math.max(1, size)], 0);
+        int i = 0;
+        int j = 0;
+        while (i < size) {
+            if (j == other.size || keys[i] < other.keys[j]) {
+                result.append(keys[i], chunks[i++].copy());
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], Operation.AND_NOT.apply(chunks[i++], other.chunks[j++]));
+            }
+        }
+        return result;
+    }
+
+    /** add a chunk after all others; empty chunks are <code>null</code> and left out */
+    private void append(char key, Chunk chunk) {
+        if (chunk == null)
+            return;
+        keys[size] = key;
+        chunks[size++] = chunk;
+    }
+
+    /** the values, in ascending order */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            offset = chunks[i].toArray(keys[i], values, offset);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -5,25 +5,41 @@ import static com.google.common.base.Preconditions.*;
 
 import java.io.*;
 import java.nio.file.*;
-
-import javafx.beans.*;
-import javafx.collections.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import javax.annotation.Nullable;
-import javax.xml.bind.JAXB;
 
 import lombok.extern.slf4j.Slf4j;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Function;
-
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.*;
+import com.google.common.util.concurrent.*;
+
+/**
+ * Stores every task in a file named by its id, plus a <code>.first</code> file with the id of the first task.
+ */
 @Slf4j
-public class FileBasedTaskStore implements TaskStore {
-    private final Function<TaskId, LinkedTask> taskIdResolver = new Function<TaskId, LinkedTask>() {
+public class FileBasedTaskStore extends LinkedTaskStore {
+    public enum LoadMode {
+        /** follow the chain from the <code>.first</code> file, reading one file after the other */
+        SERIAL,
+        /** read all task files in the directory concurrently, then link them in memory */
+        PARALLEL;
+    }
+
+    private static final int LOAD_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final FutureCallback<Void> LOG_FAILURE = new FutureCallback<Void>() {
         @Override
-        @Nullable
-        public LinkedTask apply(@Nullable TaskId id) {
-            return getById(id);
+        public void onSuccess(Void result) {}
+
+        @Override
+        public void onFailure(Throwable e) {
+            log.error("transaction failed", e);
         }
     };
 
@@ -35,268 +51,582 @@ public class FileBasedTaskStore implements TaskStore {
         ROOT_PATH = basePath.resolve("fxTasks/store");
     }
 
-    @VisibleForTesting
-    final ObservableList<LinkedTask> taskList = FXCollections.observableArrayList();
-
-    @VisibleForTesting
-    final ObservableMap<TaskId, TaskStore> childStores = FXCollections.observableHashMap();
-
-    private final Path path;
-    private final Path firstFilePath;
+    private static final String FIRST = ".first";
+
+    private Path firstFilePath;
+    private LoadMode loadMode = LoadMode.SERIAL;
+    private TaskCodec codec = new XmlTaskCodec();
+    @Nullable
+    private WriteBehindQueue writeBehind;
+    /** did this store create the write behind queue, or did it get it from its parent */
+    private boolean ownsWriteBehind = false;
+    @Nullable
+    private GroupCommitter committer;
+    private boolean ownsCommitter = false;
+    /** the transaction of the current logical operation; only used by the thread that changes the store */
+    @Nullable
+    private FileTransaction transaction;
+    @Nullable
+    private StoreWatcher watcher;
+    /**
+     * The hash of what this store wrote last to each of its files, by file name, to recognize its own writes among
+     * the changes; only while the store is watched.
+     */
+    @Nullable
+    private Map<String, Integer> writtenHashes;
+    /**
+     * The task files deleted in a transaction, while the write-behind queue may be writing them already: such a write
+     * waits for the transaction, and must not bring the file back then. Cleared when the queue is flushed.
+     */
+    private final Set<Path> deletedFiles = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
 
     public FileBasedTaskStore() {
         this(ROOT_PATH);
     }
 
     public FileBasedTaskStore(Path path) {
-        this.path = path;
-        this.firstFilePath = path.resolve(".first");
+        super(path);
+        this.firstFilePath = path.resolve(FIRST);
     }
 
-    @Override
-    public String toString() {
-        return getClass().getSimpleName() + "[" + path + "|" + taskList.size() + "|" + childStores.size() + "]";
+    public FileBasedTaskStore loadMode(LoadMode loadMode) {
+        this.loadMode = checkNotNull(loadMode);
+        return this;
     }
 
-    @Override
-    public void addListener(ListChangeListener<Task> listChangeListener) {
-        taskList.addListener(listChangeListener);
+    public FileBasedTaskStore codec(TaskCodec codec) {
+        this.codec = checkNotNull(codec);
+        return this;
     }
 
-    @Override
-    public void load() {
+    /**
+     * Don't save task files immediately, but on a background thread, after that delay. All changes of a task within
+     * the delay are written at once. The child stores share the queue.
+     */
+    public FileBasedTaskStore writeBehind(long delay, TimeUnit unit) {
+        checkState(writeBehind == null, "write behind already set");
+        this.writeBehind = new WriteBehindQueue(delay, unit);
+        this.ownsWriteBehind = true;
+        if (committer != null)
+            writeBehind.commitsTo(committer);
+        return this;
+    }
+
+    private FileBasedTaskStore writeBehind(WriteBehindQueue writeBehind) {
+        this.writeBehind = writeBehind;
+        return this;
+    }
+
+    /**
+     * Write all files changed by one operation, e.g. a reorder, in one {@link FileTransaction}, so they change
+     * together or not at all. The transactions are committed in the background in groups. The child stores share the
+     * committer.
+     */
+    public FileBasedTaskStore transactional() {
+        checkState(committer == null, "already transactional");
+        this.committer = new GroupCommitter();
+        this.ownsCommitter = true;
+        if (writeBehind != null)
+            writeBehind.commitsTo(committer);
+        return this;
+    }
+
+    private FileBasedTaskStore transactional(GroupCommitter committer) {
+        this.committer = committer;
+        return this;
+    }
+
+    /**
+     * Follow the changes that others make to the files of this store and of its loaded child stores, e.g. a sync
+     * between machines: once no more files have changed for the debounce delay, only the changed files are read
+     * again, and the tasks are patched in place. The changes are applied by that executor, which has to run them on
+     * the thread that uses the store, e.g. the UI thread. The store ignores its own writes.
+     */
+    public FileBasedTaskStore watch(long debounce, TimeUnit unit, final Executor executor) {
+        checkState(watcher == null, "already watching");
+        checkState(childStores.size() == 0, "child stores are already loaded");
+        checkNotNull(executor);
+        recordWrites();
         try {
-            doLoad();
+            watcher = new StoreWatcher(path, debounce, unit, new StoreWatcher.Callback() {
+                @Override
+                public void changed(final Map<Path, Set<String>> changes) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            externalChanges(changes);
+                        }
+                    });
+                }
+            });
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        return this;
     }
 
-    private void doLoad() throws IOException {
-        if (!Files.exists(path))
-            Files.createDirectories(path);
-        if (Files.exists(firstFilePath)) {
-            TaskId firstId = TaskId.of(Files.readAllBytes(firstFilePath));
-            load(firstId);
+    private FileBasedTaskStore recordWrites() {
+        this.writtenHashes = Maps.newConcurrentMap();
+        return this;
+    }
+
+    private void externalChanges(Map<Path, Set<String>> changes) {
+        for (Map.Entry<Path, Set<String>> entry : changes.entrySet()) {
+            FileBasedTaskStore store = storeAt(entry.getKey());
+            if (store == null)
+                log.debug("{} is not loaded", entry.getKey());
+            else
+                store.patchFiles(entry.getValue());
         }
     }
 
-    private void load(TaskId id) throws IOException {
-        do {
-            Path taskPath = path.resolve(id.asString());
-            try (Reader reader = Files.newBufferedReader(taskPath, UTF_8)) {
-                LinkedTask task = JAXB.unmarshal(reader, LinkedTask.class);
-                task.resolver(taskIdResolver).id(id);
-                add(task);
-                id = task.nextId();
+    /** the loaded store of that directory, here or in the children */
+    @Nullable
+    private FileBasedTaskStore storeAt(Path directory) {
+        FileBasedTaskStore store = this;
+        for (Path name : path.relativize(directory)) {
+            String childName = name.toString();
+            if (childName.isEmpty())
+                continue;
+            if (!childName.endsWith("@"))
+                return null;
+            try {
+                store = (FileBasedTaskStore) store.loadedChildStore(TaskId.of(childName.substring(0,
+                        childName.length() - 1)));
+            } catch (IllegalArgumentException e) {
+                return null;
             }
-        } while (id != null);
+            if (store == null)
+                return null;
+        }
+        return store;
     }
 
-    private void add(final LinkedTask task) {
-        taskList.add(task);
-        task.addListener(new InvalidationListener() {
-            @Override
-            public void invalidated(Observable observable) {
-                save(task);
+    /** read the files that others have changed, and patch the tasks */
+    private void patchFiles(Set<String> names) {
+        List<LinkedTask> changed = Lists.newArrayList();
+        List<TaskId> deleted = Lists.newArrayList();
+        TaskId oldFirstId = taskList.isEmpty() ? null : taskList.get(0).id();
+        TaskId firstId = oldFirstId;
+        for (String name : names) {
+            if (name.equals(FIRST)) {
+                firstId = readFirstId(firstId);
+                continue;
+            }
+            if (name.startsWith(".") || name.endsWith("@"))
+                continue;
+            TaskId id;
+            try {
+                id = TaskId.of(name);
+            } catch (IllegalArgumentException e) {
+                log.debug("ignore {}", name);
+                continue;
             }
-        });
+            byte[] bytes = readChanged(name);
+            LinkedTask task = taskIndex.get(id);
+            if (bytes == null) {
+                if (task != null && !Files.exists(path.resolve(name)))
+                    deleted.add(id);
+            } else if (task == null || !Arrays.equals(bytes, encode(task))) {
+                try {
+                    changed.add(codec.read(new ByteArrayInputStream(bytes)).id(id));
+                } catch (IOException e) {
+                    log.warn("can't read changed task {} in {}: {}", new Object[] { name, path, e.getMessage() });
+                }
+            }
+        }
+        if (changed.isEmpty() && deleted.isEmpty() && Objects.equal(firstId, oldFirstId))
+            return;
+        log.info("patch {} changed and {} deleted tasks in {}", new Object[] { changed.size(), deleted.size(), path });
+        patch(changed, deleted, firstId);
     }
 
-    @Override
-    public LinkedTask create() {
-        LinkedTask task = new LinkedTask().resolver(taskIdResolver).id(TaskId.random());
-        if (taskList.isEmpty()) {
-            add(task);
-            saveFirst();
-        } else {
-            LinkedTask lastTask = lastTask();
-            lastTask.next(task);
-            save(lastTask);
-            add(task);
+    /** the new first id, or the old one if the file is unchanged */
+    @Nullable
+    private TaskId readFirstId(@Nullable TaskId oldFirstId) {
+        if (!Files.exists(firstFilePath))
+            return null;
+        byte[] bytes = readChanged(FIRST);
+        try {
+            return (bytes == null) ? oldFirstId : TaskId.of(bytes);
+        } catch (IllegalArgumentException e) {
+            log.warn("can't read changed {}: {}", firstFilePath, e.getMessage());
+            return oldFirstId;
         }
-        return task;
     }
 
-    @VisibleForTesting
-    protected void saveFirst() {
-        // TODO only if necessary
+    /** the content of the file, or <code>null</code> if it's gone, or if this store has written it */
+    @Nullable
+    private byte[] readChanged(String name) {
+        byte[] bytes;
         try {
-            Files.createDirectories(firstFilePath.getParent());
-            Files.write(firstFilePath, taskList.get(0).id().asString().getBytes());
+            bytes = Files.readAllBytes(path.resolve(name));
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            return null;
         }
+        Integer writtenHash = writtenHashes.get(name);
+        return (writtenHash != null && writtenHash == Arrays.hashCode(bytes)) ? null : bytes;
     }
 
-    @VisibleForTesting
-    protected void removeFirst() {
+    /** remember what this store writes, to tell its own writes from those of others */
+    private byte[] written(Path file, byte[] bytes) {
+        if (writtenHashes != null)
+            writtenHashes.put(file.getFileName().toString(), Arrays.hashCode(bytes));
+        return bytes;
+    }
+
+    /** Start a transaction of your own; it has to be committed or aborted by the same thread. */
+    public FileTransaction beginTransaction() {
+        checkState(committer != null, "store is not transactional");
+        return committer.begin();
+    }
+
+    @Override
+    public void load() {
         try {
-            Files.delete(firstFilePath);
-            Files.delete(firstFilePath.getParent());
+            doLoad();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    @VisibleForTesting
-    protected void save(LinkedTask task) {
-        log.debug("save: {} @ {}", task.title(), task.id());
-        try (Writer writer = Files.newBufferedWriter(getPath(task), UTF_8)) {
-            JAXB.marshal(task, writer);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private void doLoad() throws IOException {
+        // the directory is created with the first task
+        if (!Files.exists(path))
+            return;
+        if (committer == null)
+            GroupCommitter.recover(path);
+        else
+            committer.recoverBetweenBatches(path);
+        if (Files.exists(firstFilePath)) {
+            TaskId firstId = TaskId.of(Files.readAllBytes(firstFilePath));
+            switch (loadMode) {
+            case SERIAL:
+                load(firstId);
+                break;
+            case PARALLEL:
+                addChain(firstId, readAll());
+                break;
+            }
+        } else if (containsTaskFile()) {
+            log.warn("no first id in {}", path);
+            addChain(null, readAll());
         }
+        loaded();
     }
 
-    private Path getPath(Task task) {
-        return path.resolve(task.id().asString());
+    /** follow the chain file by file; if it's broken, read all files to repair it */
+    private void load(TaskId firstId) throws IOException {
+        List<LinkedTask> tasks = Lists.newArrayList();
+        Set<TaskId> loaded = Sets.newHashSet();
+        for (TaskId id = firstId; id != null; id = tasks.get(tasks.size() - 1).nextId()) {
+            if (!loaded.add(id) || !Files.exists(path.resolve(id.asString()))) {
+                log.warn("broken chain in {} at {}", path, id);
+                addChain(firstId, readAll());
+                return;
+            }
+            tasks.add(read(id));
+        }
+        addAll(tasks);
     }
 
-    private LinkedTask lastTask() {
-        return taskList.isEmpty() ? null : taskList.get(taskList.size() - 1);
+    private boolean containsTaskFile() throws IOException {
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(path)) {
+            for (Path taskPath : directory) {
+                if (isTaskFile(taskPath))
+                    return true;
+            }
+        }
+        return false;
     }
 
-    @Override
-    public void moveUp(Task task) {
-        int index = taskList.indexOf(task);
-        if (index == 0) {
-            log.debug("{} is already first task", task);
-            return;
+    private Map<TaskId, LinkedTask> readAll() throws IOException {
+        List<Callable<LinkedTask>> reads = Lists.newArrayList();
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(path)) {
+            for (Path taskPath : directory) {
+                if (isTaskFile(taskPath)) {
+                    final TaskId id = TaskId.of(taskPath.getFileName().toString());
+                    reads.add(new Callable<LinkedTask>() {
+                        @Override
+                        public LinkedTask call() throws IOException {
+                            return read(id);
+                        }
+                    });
+                }
+            }
         }
 
-        LinkedTask moving = (LinkedTask) task;
-        LinkedTask swapped = taskList.get(index - 1);
-        LinkedTask previous = (index == 1) ? null : taskList.get(index - 2);
-        LinkedTask next = moving.next();
-
-        moveByOffset(moving, -1);
+        ExecutorService executor = Executors.newFixedThreadPool(LOAD_THREADS);
+        try {
+            Map<TaskId, LinkedTask> tasks = Maps.newHashMapWithExpectedSize(reads.size());
+            for (Future<LinkedTask> future : executor.invokeAll(reads)) {
+                LinkedTask task = future.get();
+                tasks.put(task.id(), task);
+            }
+            return tasks;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while loading " + path);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        if (previous != null)
-            previous.next(moving);
-        moving.next(swapped);
-        swapped.next(next);
-        // next.next remains
+    private static boolean isTaskFile(Path path) {
+        return !path.getFileName().toString().startsWith(".") && Files.isRegularFile(path);
+    }
 
-        if (previous == null)
-            saveFirst();
-        else
-            save(previous);
-        save(swapped);
-        save(moving);
-        if (next != null) {
-            save(next);
+    private LinkedTask read(TaskId id) throws IOException {
+        Path taskPath = path.resolve(id.asString());
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(taskPath))) {
+            LinkedTask task = codec.read(in);
+            return task.resolver(taskIdResolver).id(id);
         }
     }
 
     @Override
-    public void moveDown(Task task) {
-        int index = taskList.indexOf(task);
-        if (index + 1 >= taskList.size()) {
-            log.debug("{} is already last task", task);
-            return;
-        }
-
-        LinkedTask moving = (LinkedTask) task;
-        LinkedTask previous = (index == 0) ? null : taskList.get(index - 1);
-        LinkedTask swapped = moving.next();
-        LinkedTask next = swapped.next();
+    protected void beginUpdate() {
+        if (committer != null && transaction == null)
+            transaction = committer.begin();
+    }
 
-        moveByOffset(moving, 1);
+    @Override
+    protected void endUpdate(boolean completed) {
+        if (transaction == null)
+            return;
+        FileTransaction finished = transaction;
+        transaction = null;
+        if (completed)
+            commit(finished);
+        else
+            finished.abort();
+    }
 
-        if (previous == null)
-            saveFirst();
+    private void commit(FileTransaction finished) {
+        if (finished.isEmpty())
+            finished.abort();
         else
-            previous.next(swapped);
-        moving.next(next);
-        swapped.next(moving);
-        // next.next remains
-
-        if (previous != null)
-            save(previous);
-        save(moving);
-        save(swapped);
-        if (next != null) {
-            save(next);
-        }
+            Futures.addCallback(finished.commit(), LOG_FAILURE);
     }
 
-    private void moveByOffset(LinkedTask task, int delta) {
-        int index = taskList.indexOf(task);
-        log.debug("move from {} to {}", index, index + delta);
-        taskList.remove(index);
-        taskList.add(index + delta, task);
-        log.debug("--> {}", taskList);
+    @Override
+    @VisibleForTesting
+    protected void saveFirst() {
+        // TODO only if necessary
+        byte[] firstId = written(firstFilePath, taskList.get(0).id().asString().getBytes(UTF_8));
+        if (transaction != null) {
+            transaction.write(firstFilePath, firstId);
+        } else if (committer != null) {
+            commit(committer.begin().write(firstFilePath, firstId));
+        } else {
+            try {
+                Files.createDirectories(firstFilePath.getParent());
+                Files.write(firstFilePath, firstId);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
     @Override
-    public LinkedTask getById(TaskId id) {
-        if (id == null)
-            return null;
-        for (LinkedTask task : taskList) {
-            if (id.equals(task.id())) {
-                return task;
+    @VisibleForTesting
+    protected void removeFirst() {
+        if (transaction != null) {
+            transaction.delete(firstFilePath).removeDirectoryIfEmpty(path);
+        } else if (committer != null) {
+            commit(committer.begin().delete(firstFilePath).removeDirectoryIfEmpty(path));
+        } else {
+            try {
+                Files.delete(firstFilePath);
+                Files.delete(path);
+            } catch (DirectoryNotEmptyException e) {
+                log.debug("keep non-empty directory {}", path);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
         }
-        throw new IllegalArgumentException("no task found with id " + id);
     }
 
     @Override
-    public void moveIn(Task task) {
-        log.debug("move in {}", task);
+    @VisibleForTesting
+    protected void save(final LinkedTask task) {
+        deletedFiles.remove(getPath(task));
+        if (transaction != null) {
+            transaction.write(getPath(task), written(getPath(task), encode(task)));
+        } else if (writeBehind == null) {
+            write(task);
+        } else {
+            writeBehind.schedule(getPath(task), new Runnable() {
+                @Override
+                public void run() {
+                    write(task);
+                }
+            });
+        }
     }
 
+    /** the whole task at once, with its link */
     @Override
-    public void moveOut(Task task) {
-        log.debug("move out {}", task);
+    protected void saveCreated(LinkedTask task) {
+        if (taskList.get(0) == task)
+            createDirectory();
+        save(task);
     }
 
+    /** written at once, even if it's never changed, so no link or children directory refers to a missing file */
     @Override
-    public Task createChildOf(Task parent) {
-        TaskId parentId = ((LinkedTask) parent).id();
-        TaskStore childStore = childStores.get(parentId);
-        if (childStore == null) {
-            Path childPath = path.resolve(parentId.asString() + "@");
-            childStore = createChildStore(childPath);
-            childStores.put(parentId, childStore);
+    protected void saveNew(LinkedTask task) {
+        if (taskList.isEmpty())
+            createDirectory();
+        save(task);
+    }
+
+    /** the first task is written before .first, which would create the directory of a new store */
+    private void createDirectory() {
+        if (committer != null)
+            return;
+        try {
+            Files.createDirectories(path);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        return childStore.create();
     }
 
-    @VisibleForTesting
-    FileBasedTaskStore createChildStore(Path childPath) {
-        return new FileBasedTaskStore(childPath);
+    /** write the task now, or in a transaction of its own; may be called from a background thread */
+    private void write(LinkedTask task) {
+        log.debug("save: {} @ {}", task.title(), task.id());
+        if (committer != null) {
+            // encode within the transaction, so transactions get committed in the order of the changes
+            FileTransaction single = committer.begin();
+            if (deletedFiles.contains(getPath(task))) {
+                single.abort();
+                log.debug("don't save deleted {}", task.id());
+                return;
+            }
+            try {
+                single.write(getPath(task), written(getPath(task), encode(task)));
+            } catch (RuntimeException e) {
+                single.abort();
+                throw e;
+            }
+            commit(single);
+        } else {
+            try {
+                Files.write(getPath(task), written(getPath(task), encode(task)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private byte[] encode(LinkedTask task) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            codec.write(task, out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private Path getPath(Task task) {
+        return path.resolve(task.id().asString());
     }
 
     @Override
-    public void remove(Task task) {
-        checkNotNull(task);
+    protected LinkedTaskStore createChildStore(TaskId parentId) {
+        return createChildStore(childPath(parentId));
+    }
 
-        deleteTaskFile(task);
+    @Override
+    protected void relocate(Path newPath) {
+        super.relocate(newPath);
+        this.firstFilePath = newPath.resolve(FIRST);
+    }
 
-        boolean removed = taskList.remove(task);
-        checkState(removed, "the task store at " + path + " doesn't contain a task " + task.id());
-        if (taskList.isEmpty()) {
-            removeFirst();
+    @VisibleForTesting
+    FileBasedTaskStore createChildStore(Path childPath) {
+        FileBasedTaskStore childStore = new FileBasedTaskStore(childPath).loadMode(loadMode).codec(codec).writeBehind(
+                writeBehind).transactional(committer);
+        return (writtenHashes == null) ? childStore : childStore.recordWrites();
+    }
+
+    @Override
+    protected void delete(final LinkedTask task) {
+        if (transaction != null) {
+            // together with the relinks of the same operation, so a crash can't leave the file unlinked
+            if (writeBehind != null) {
+                deletedFiles.add(getPath(task));
+                writeBehind.cancel(getPath(task));
+            }
+            transaction.delete(getPath(task));
+        } else if (writeBehind == null) {
+            deleteTaskFile(task);
         } else {
-            // TODO update first
+            // replaces a pending save, so the file doesn't come back
+            writeBehind.schedule(getPath(task), new Runnable() {
+                @Override
+                public void run() {
+                    deleteTaskFile(task);
+                }
+            });
         }
     }
 
     @VisibleForTesting
     void deleteTaskFile(Task task) {
         Path taskPath = getPath(task);
+        if (committer != null) {
+            commit(committer.begin().delete(taskPath));
+            return;
+        }
         try {
-            Files.delete(taskPath);
+            Files.deleteIfExists(taskPath);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public void removeChildOf(Task parent, Task child) {
-        TaskStore childStore = childStores.get(parent.id());
-        checkNotNull(childStore, "task " + parent.id() + " has no children");
-        childStore.remove(child);
+    public void flush() {
+        if (writeBehind != null) {
+            writeBehind.flush();
+            deletedFiles.clear();
+        }
+        if (committer != null)
+            committer.flush();
+        super.flush();
+    }
+
+    /**
+     * Only the writes of this directory and those below; on the calling thread, as the write-behind thread could wait
+     * for a transaction that the caller has begun
+     */
+    @Override
+    protected void flushEvicted() {
+        if (writeBehind != null) {
+            writeBehind.flush(new Predicate<Object>() {
+                @Override
+                public boolean apply(Object key) {
+                    return key instanceof Path && ((Path) key).startsWith(path);
+                }
+            });
+        }
+        if (committer != null)
+            committer.flush();
+    }
+
+    @Override
+    public void close() {
+        if (watcher != null)
+            watcher.close();
+        super.close();
+        if (ownsWriteBehind)
+            writeBehind.close();
+        if (ownsCommitter)
+            committer.close();
     }
 }
@@ -0,0 +1,85 @@
+package fxtasks.model;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import com.google.common.collect.*;
+import com.google.common.util.concurrent.*;
+
+/**
+ * The file changes of one logical operation, e.g. all task files and the <code>.first</code> file touched by a
+ * reorder. The changes are only staged in memory until {@link #commit() committed}; then they become visible all
+ * together, or, after a crash, not at all. Staging holds a lock of the {@link GroupCommitter}, so transactions are
+ * committed in the order they were begun.
+ */
+public class FileTransaction {
+    private final GroupCommitter committer;
+    private final SettableFuture<Void> done = SettableFuture.create();
+    private boolean finished = false;
+
+    /** the new contents by file; <code>null</code> to delete the file */
+    final Map<Path, byte[]> changes = Maps.newLinkedHashMap();
+    final Set<Path> directoriesToRemove = Sets.newLinkedHashSet();
+
+    FileTransaction(GroupCommitter committer) {
+        this.committer = committer;
+    }
+
+    public FileTransaction write(Path file, byte[] contents) {
+        checkNotFinished();
+        changes.put(file, checkNotNull(contents));
+        return this;
+    }
+
+    public FileTransaction delete(Path file) {
+        checkNotFinished();
+        changes.put(file, null);
+        return this;
+    }
+
+    /** remove the directory after the changes, but only if it's empty by then */
+    public FileTransaction removeDirectoryIfEmpty(Path directory) {
+        checkNotFinished();
+        directoriesToRemove.add(directory);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty() && directoriesToRemove.isEmpty();
+    }
+
+    /**
+     * Hand the changes over to the committer; they will be written together with other transactions committed at
+     * about the same time.
+     *
+     * @return a future that completes when the changes are durable
+     */
+    public ListenableFuture<Void> commit() {
+        checkNotFinished();
+        finished = true;
+        committer.enqueue(this);
+        return done;
+    }
+
+    /** Drop all changes */
+    public void abort() {
+        checkNotFinished();
+        finished = true;
+        committer.release();
+        done.cancel(false);
+    }
+
+    private void checkNotFinished() {
+        checkState(!finished, "transaction already finished");
+    }
+
+    void committed() {
+        done.set(null);
+    }
+
+    void failed(Throwable e) {
+        done.setException(e);
+    }
+}
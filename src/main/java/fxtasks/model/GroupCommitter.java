@@ -0,0 +1,267 @@
+package fxtasks.model;
+
+import static com.google.common.base.Charsets.*;
+import static java.nio.file.StandardOpenOption.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.collect.*;
+
+/**
+ * Writes {@link FileTransaction}s on a background thread. All transactions that are waiting when the thread gets to
+ * them are committed as one batch. For every directory in a batch:
+ * <ol>
+ * <li>the new contents are written to temp files, which are synced,</li>
+ * <li>an intent file lists the renames and deletions; it's synced, and then the directory itself is synced, once:
+ * that's the commit point,</li>
+ * <li>the temp files are atomically renamed to their targets and the deleted files are removed, and the directory is
+ * synced again, so the renames are durable,</li>
+ * <li>only then the intent file is removed.</li>
+ * </ol>
+ * If the application crashes after the commit point, {@link #recover(Path)} repeats the renames and deletions from the
+ * intent file; before the commit point, the old files are still untouched, and it deletes the temp files that no
+ * intent refers to. Without the second sync, the removal of the intent file could reach the disk before the renames,
+ * and a crash would lose them.
+ */
+@Slf4j
+class GroupCommitter {
+    static final String INTENT = ".transaction";
+
+    private static final Splitter TAB = Splitter.on('\t');
+
+    /** the temp files of the new contents; see {@link #commit(Path, Map)} */
+    private static final String TEMP_FILES = ".*.tmp";
+
+    /**
+     * Finish a batch that was interrupted after its commit point, and delete the temp files of a batch that was
+     * interrupted before; so they don't pile up, and sync tools don't pick them up. Only while no batch is committed in
+     * the directory; see {@link #recoverBetweenBatches(Path)}.
+     */
+    public static void recover(Path directory) throws IOException {
+        Path intentPath = directory.resolve(INTENT);
+        if (Files.exists(intentPath)) {
+            log.info("recover interrupted transaction in {}", directory);
+            redo(directory, Files.readAllLines(intentPath, UTF_8));
+            force(directory);
+            Files.delete(intentPath);
+        }
+        // the intent has moved the temp files it refers to
+        try (DirectoryStream<Path> tempFiles = Files.newDirectoryStream(directory, TEMP_FILES)) {
+            for (Path tempFile : tempFiles) {
+                log.info("delete stale temp file {}", tempFile);
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    private static void redo(Path directory, List<String> intent) throws IOException {
+        for (String line : intent) {
+            if (line.isEmpty())
+                continue;
+            Iterator<String> parts = TAB.split(line).iterator();
+            String tempName = parts.next();
+            Path target = directory.resolve(parts.next());
+            if (tempName.isEmpty()) {
+                Files.deleteIfExists(target);
+            } else {
+                Path temp = directory.resolve(tempName);
+                if (Files.exists(temp)) {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final BlockingQueue<FileTransaction> queue = Queues.newLinkedBlockingQueue();
+    private final Thread thread = new Thread("group-commit") {
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    List<FileTransaction> batch = Lists.newArrayList(queue.take());
+                    queue.drainTo(batch);
+                    commit(batch);
+                }
+            } catch (InterruptedException e) {
+                log.debug("group committer stopped");
+            }
+        }
+    };
+
+    @VisibleForTesting
+    int batches = 0;
+    @VisibleForTesting
+    int fileSyncs = 0;
+    @VisibleForTesting
+    int directorySyncs = 0;
+
+    public GroupCommitter() {
+        this(true);
+    }
+
+    @VisibleForTesting
+    GroupCommitter(boolean start) {
+        thread.setDaemon(true);
+        if (start)
+            start();
+    }
+
+    @VisibleForTesting
+    void start() {
+        thread.start();
+    }
+
+    /** Start a new transaction. Until it's committed or aborted, other threads have to wait to begin theirs. */
+    public FileTransaction begin() {
+        lock.lock();
+        return new FileTransaction(this);
+    }
+
+    void enqueue(FileTransaction transaction) {
+        try {
+            queue.add(transaction);
+        } finally {
+            release();
+        }
+    }
+
+    void release() {
+        lock.unlock();
+    }
+
+    /**
+     * {@link #recover(Path) Recover} the directory once the transactions committed so far are done, and before others
+     * begin, so their temp files are not taken for stale ones.
+     */
+    public void recoverBetweenBatches(Path directory) throws IOException {
+        lock.lock();
+        try {
+            flush();
+            recover(directory);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Wait for all transactions committed so far to be durable. */
+    public void flush() {
+        try {
+            begin().commit().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while flushing", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("flush failed", e.getCause());
+        }
+    }
+
+    public void close() {
+        flush();
+        thread.interrupt();
+    }
+
+    private void commit(List<FileTransaction> batch) {
+        batches++;
+        try {
+            Map<Path, Map<Path, byte[]>> changesByDirectory = Maps.newLinkedHashMap();
+            Set<Path> directoriesToRemove = Sets.newLinkedHashSet();
+            for (FileTransaction transaction : batch) {
+                for (Map.Entry<Path, byte[]> change : transaction.changes.entrySet()) {
+                    Path directory = change.getKey().getParent();
+                    Map<Path, byte[]> changes = changesByDirectory.get(directory);
+                    if (changes == null) {
+                        changes = Maps.newLinkedHashMap();
+                        changesByDirectory.put(directory, changes);
+                    }
+                    // a later transaction wins
+                    changes.put(change.getKey(), change.getValue());
+                }
+                directoriesToRemove.addAll(transaction.directoriesToRemove);
+            }
+            for (Map.Entry<Path, Map<Path, byte[]>> entry : changesByDirectory.entrySet()) {
+                commit(entry.getKey(), entry.getValue());
+            }
+            for (Path directory : directoriesToRemove) {
+                removeIfEmpty(directory);
+            }
+            for (FileTransaction transaction : batch) {
+                transaction.committed();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("commit of " + batch.size() + " transactions failed", e);
+            for (FileTransaction transaction : batch) {
+                transaction.failed(e);
+            }
+        }
+    }
+
+    private void commit(Path directory, Map<Path, byte[]> changes) throws IOException {
+        Files.createDirectories(directory);
+        StringBuilder intent = new StringBuilder();
+        for (Map.Entry<Path, byte[]> change : changes.entrySet()) {
+            String name = change.getKey().getFileName().toString();
+            byte[] contents = change.getValue();
+            if (contents == null) {
+                intent.append('\t').append(name).append('\n');
+            } else {
+                String tempName = "." + name + ".tmp";
+                write(directory.resolve(tempName), contents);
+                intent.append(tempName).append('\t').append(name).append('\n');
+            }
+        }
+        Path intentPath = directory.resolve(INTENT);
+        write(intentPath, intent.toString().getBytes(UTF_8));
+        syncDirectory(directory);
+
+        redo(directory, Lists.newArrayList(Splitter.on('\n').split(intent)));
+        syncDirectory(directory);
+        Files.delete(intentPath);
+    }
+
+    private void write(Path file, byte[] contents) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+            fileSyncs++;
+        }
+    }
+
+    private void syncDirectory(Path directory) {
+        if (force(directory))
+            directorySyncs++;
+    }
+
+    /** @return if the directory could be synced */
+    private static boolean force(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+            return true;
+        } catch (IOException e) {
+            // not all platforms can open a directory, e.g. Windows
+            log.debug("can't sync directory {}: {}", directory, e.toString());
+            return false;
+        }
+    }
+
+    private void removeIfEmpty(Path directory) throws IOException {
+        try {
+            Files.deleteIfExists(directory);
+        } catch (DirectoryNotEmptyException e) {
+            log.debug("keep non-empty directory {}", directory);
+        }
+    }
+}
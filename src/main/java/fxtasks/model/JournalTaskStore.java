@@ -0,0 +1,462 @@
+package fxtasks.model;
+
+import static com.google.common.base.Preconditions.*;
+import static java.nio.file.StandardOpenOption.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Appends every change as a record to one <code>.journal</code> file per directory, instead of rewriting task files.
+ * Loading replays the journal. When it grows beyond the {@link #compactionThreshold(long) compaction threshold}, it's
+ * replaced by a snapshot of the current tasks. All writes are done in the background by a single writer thread, in the
+ * order of the changes; call {@link #flush()} to wait for them.
+ * <p>
+ * Use {@link #migrate(Path)} to convert the directories of a {@link FileBasedTaskStore}.
+ */
+@Slf4j
+public class JournalTaskStore extends LinkedTaskStore {
+    private static class Replay {
+        private final Map<TaskId, LinkedTask> tasks = Maps.newLinkedHashMap();
+        private TaskId firstId;
+        /** the records are in the format of old journals, until a {@link Record#FORMAT} record */
+        private int format = Record.SHORT_STRING_FORMAT;
+
+        private boolean shortStrings() {
+            return format == Record.SHORT_STRING_FORMAT;
+        }
+
+        private LinkedTask get(TaskId id) {
+            LinkedTask task = tasks.get(id);
+            checkState(task != null, "journal refers to unknown task " + id);
+            return task;
+        }
+    }
+
+    private enum Record {
+        CREATE {
+            @Override
+            public void write(DataOutput out, LinkedTask task) throws IOException {
+                writeId(out, task.id());
+            }
+
+            @Override
+            public void replay(DataInput in, Replay replay) throws IOException {
+                TaskId id = readId(in, replay);
+                if (id == null)
+                    throw new StreamCorruptedException("create a task without id");
+                replay.tasks.put(id, new LinkedTask().id(id));
+            }
+        },
+        PROPERTIES {
+            @Override
+            public void write(DataOutput out, LinkedTask task) throws IOException {
+                writeId(out, task.id());
+                BinaryTaskCodec.writeProperties(task, out);
+            }
+
+            @Override
+            public void replay(DataInput in, Replay replay) throws IOException {
+                BinaryTaskCodec.readProperties(replay.get(readId(in, replay)), in, replay.shortStrings());
+            }
+        },
+        LINK {
+            @Override
+            public void write(DataOutput out, LinkedTask task) throws IOException {
+                writeId(out, task.id());
+                writeId(out, task.nextId);
+            }
+
+            @Override
+            public void replay(DataInput in, Replay replay) throws IOException {
+                LinkedTask task = replay.get(readId(in, replay));
+                task.nextId = readId(in, replay);
+            }
+        },
+        /** the first task; or <code>null</code> if there are no more tasks */
+        FIRST {
+            @Override
+            public void write(DataOutput out, LinkedTask task) throws IOException {
+                writeId(out, (task == null) ? null : task.id());
+            }
+
+            @Override
+            public void replay(DataInput in, Replay replay) throws IOException {
+                replay.firstId = readId(in, replay);
+            }
+        },
+        REMOVE {
+            @Override
+            public void write(DataOutput out, LinkedTask task) throws IOException {
+                writeId(out, task.id());
+            }
+
+            @Override
+            public void replay(DataInput in, Replay replay) throws IOException {
+                replay.tasks.remove(readId(in, replay));
+            }
+        },
+        /**
+         * The format of the records that follow. Journals without it are older, and it's appended before their first
+         * new record.
+         */
+        FORMAT {
+            @Override
+            public void write(DataOutput out, LinkedTask task) throws IOException {
+                out.writeByte(BINARY_ID_FORMAT);
+            }
+
+            @Override
+            public void replay(DataInput in, Replay replay) throws IOException {
+                int format = in.readUnsignedByte();
+                if (format != STRING_FORMAT && format != BINARY_ID_FORMAT)
+                    throw new StreamCorruptedException("unknown journal format " + format);
+                replay.format = format;
+            }
+        };
+
+        /** ids and strings with {@link DataOutput#writeUTF(String)}; only in journals without a format record */
+        private static final int SHORT_STRING_FORMAT = 0;
+        /** the strings of {@link PropertyType}, and ids as strings, too */
+        private static final int STRING_FORMAT = 1;
+        /** ids as two longs, which takes half the size */
+        private static final int BINARY_ID_FORMAT = 2;
+
+        private static void writeId(DataOutput out, TaskId id) throws IOException {
+            BinaryTaskCodec.writeId(out, id);
+        }
+
+        private static TaskId readId(DataInput in, Replay replay) throws IOException {
+            if (replay.format == BINARY_ID_FORMAT)
+                return BinaryTaskCodec.readId(in);
+            String id = (String) PropertyType.STRING.read(in, replay.shortStrings());
+            return (id == null) ? null : TaskId.of(id);
+        }
+
+        public void writeRecord(DataOutput out, LinkedTask task) throws IOException {
+            out.writeByte(ordinal());
+            write(out, task);
+        }
+
+        public abstract void write(DataOutput out, LinkedTask task) throws IOException;
+
+        public abstract void replay(DataInput in, Replay replay) throws IOException;
+    }
+
+    private static final String JOURNAL = ".journal";
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 1024 * 1024;
+
+    /** shared by all journals, so the order of the writes is the order of the changes, even across stores */
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("journal-writer").setDaemon(true).build());
+
+    /**
+     * Converts the {@link FileBasedTaskStore} in that directory and all of its child directories to journals. The
+     * task files are left where they are.
+     */
+    public static void migrate(Path path) throws IOException {
+        FileBasedTaskStore source = new FileBasedTaskStore(path);
+        source.load();
+        log.info("migrate {} tasks in {}", source.taskList.size(), path);
+        new JournalTaskStore(path).writeSnapshot(snapshot(source.taskList));
+
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(path, "*@")) {
+            for (Path child : children) {
+                if (Files.isDirectory(child)) {
+                    migrate(child);
+                }
+            }
+        }
+    }
+
+    private static byte[] snapshot(List<LinkedTask> tasks) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        try {
+            Record.FORMAT.writeRecord(out, null);
+            for (LinkedTask task : tasks) {
+                Record.CREATE.writeRecord(out, task);
+                Record.PROPERTIES.writeRecord(out, task);
+                Record.LINK.writeRecord(out, task);
+            }
+            Record.FIRST.writeRecord(out, tasks.isEmpty() ? null : tasks.get(0));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private Path journalPath;
+    private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /** only used by the writer thread */
+    private FileChannel channel;
+    private volatile long journalSize;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    /** the journal has a {@link Record#FORMAT} record, so new records can be appended in the current format */
+    private boolean formatWritten = false;
+    /** the depth of the updates in progress; the snapshot is only taken between them, when the tasks are complete */
+    private int updates = 0;
+    private volatile IOException failure;
+
+    public JournalTaskStore(Path path) {
+        super(path);
+        this.journalPath = path.resolve(JOURNAL);
+    }
+
+    /** the size in bytes the journal may grow to, before it gets compacted */
+    public JournalTaskStore compactionThreshold(long compactionThreshold) {
+        checkArgument(compactionThreshold > 0, "compaction threshold must be positive");
+        this.compactionThreshold = compactionThreshold;
+        return this;
+    }
+
+    @Override
+    public void load() {
+        try {
+            if (Files.exists(journalPath))
+                replay();
+            loaded();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void replay() throws IOException {
+        Replay replay = new Replay();
+        long validLength = 0;
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(
+                Files.newInputStream(journalPath)))) {
+            DataInputStream in = new DataInputStream(counting);
+            int type;
+            while ((type = in.read()) >= 0) {
+                if (type >= Record.values().length)
+                    throw new StreamCorruptedException("unknown record type " + type);
+                Record.values()[type].replay(in, replay);
+                validLength = counting.getCount();
+            }
+        } catch (EOFException | StreamCorruptedException | UTFDataFormatException | IllegalArgumentException
+                | IllegalStateException e) {
+            // a record that was torn by a crash, or whatever follows it in its place
+            log.warn("drop incomplete record at " + validLength + " in " + journalPath + ", and all after it", e);
+            try (FileChannel truncating = FileChannel.open(journalPath, WRITE)) {
+                truncating.truncate(validLength);
+            }
+        }
+        journalSize = validLength;
+        formatWritten = replay.format == Record.BINARY_ID_FORMAT;
+
+        for (LinkedTask task : replay.tasks.values()) {
+            task.resolver(taskIdResolver);
+        }
+        addChain(replay.firstId, replay.tasks);
+    }
+
+    @Override
+    protected void beginUpdate() {
+        updates++;
+    }
+
+    @Override
+    protected void endUpdate(boolean completed) {
+        updates--;
+        if (updates == 0 && completed)
+            compactIfDue();
+    }
+
+    @Override
+    protected void saveNew(LinkedTask task) {
+        append(Record.CREATE, task);
+    }
+
+    @Override
+    protected void saveFirst() {
+        append(Record.FIRST, taskList.get(0));
+    }
+
+    @Override
+    protected void removeFirst() {
+        append(Record.FIRST, null);
+    }
+
+    @Override
+    protected void save(LinkedTask task) {
+        append(Record.PROPERTIES, task);
+    }
+
+    @Override
+    protected void saveLink(LinkedTask task) {
+        append(Record.LINK, task);
+    }
+
+    @Override
+    protected void delete(LinkedTask task) {
+        append(Record.REMOVE, task);
+    }
+
+    @Override
+    protected LinkedTaskStore createChildStore(TaskId parentId) {
+        return new JournalTaskStore(childPath(parentId)).compactionThreshold(compactionThreshold);
+    }
+
+    /** the open journal has moved with the directory, so it's still valid */
+    @Override
+    protected void relocate(Path newPath) {
+        super.relocate(newPath);
+        this.journalPath = newPath.resolve(JOURNAL);
+    }
+
+    private void append(Record record, LinkedTask task) {
+        checkNoFailure();
+        if (!formatWritten) {
+            formatWritten = true;
+            append(Record.FORMAT, null);
+        }
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        try {
+            record.writeRecord(out, task);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        final byte[] bytes = out.toByteArray();
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(bytes);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        });
+
+        // a change of a property is complete on its own; everything else waits for the end of its update
+        if (updates == 0)
+            compactIfDue();
+    }
+
+    private void compactIfDue() {
+        if (journalSize > compactionThreshold && compacting.compareAndSet(false, true))
+            compact();
+    }
+
+    /** take the snapshot now, but write it in the background */
+    private void compact() {
+        log.debug("compact {} at {} bytes", journalPath, journalSize);
+        final byte[] snapshot = snapshot(taskList);
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeSnapshot(snapshot);
+                } catch (IOException e) {
+                    fail(e);
+                } finally {
+                    compacting.set(false);
+                }
+            }
+        });
+    }
+
+    private void fail(IOException e) {
+        log.error("writing to " + journalPath + " failed", e);
+        failure = e;
+    }
+
+    private void checkNoFailure() {
+        if (failure != null)
+            throw new RuntimeException("writing to " + journalPath + " failed", failure);
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (channel == null) {
+            Files.createDirectories(path);
+            channel = FileChannel.open(journalPath, CREATE, WRITE, APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        journalSize = channel.size();
+    }
+
+    private void writeSnapshot(byte[] snapshot) throws IOException {
+        Files.createDirectories(path);
+        Path tempPath = path.resolve(JOURNAL + ".tmp");
+        try (FileChannel out = FileChannel.open(tempPath, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        closeChannel();
+        Files.move(tempPath, journalPath, StandardCopyOption.ATOMIC_MOVE);
+        journalSize = snapshot.length;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @VisibleForTesting
+    long journalSize() {
+        return journalSize;
+    }
+
+    /** Wait for all changes so far to be written to the journal. */
+    @Override
+    public void flush() {
+        super.flush();
+        awaitWriter(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                if (channel != null)
+                    channel.force(false);
+                return null;
+            }
+        });
+    }
+
+    /** Write all changes and close the journal; it's reopened when there are more changes. */
+    @Override
+    public void close() {
+        super.close();
+        awaitWriter(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                closeChannel();
+                return null;
+            }
+        });
+    }
+
+    private void awaitWriter(Callable<Void> callable) {
+        try {
+            WRITER.submit(callable).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for " + journalPath, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("writing to " + journalPath + " failed", e.getCause());
+        }
+        checkNoFailure();
+    }
+}
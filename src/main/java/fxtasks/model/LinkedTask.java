@@ -1,18 +1,21 @@
 package fxtasks.model;
 
-import javax.xml.bind.annotation.*;
+import java.util.Set;
 
 import com.google.common.base.Function;
 
-@XmlRootElement
 class LinkedTask extends AbstractTask {
 
     /** the id is the file name, not /in/ the file */
-    @XmlTransient
     private TaskId id;
 
-    @XmlAttribute
-    String nextId;
+    TaskId nextId;
+
+    /** the index in the task list of the store; only valid as far as the store says so */
+    transient int position;
+
+    /** the key of the task in the bitmaps of the {@link TagIndex} of the store */
+    transient int ordinal;
 
     private transient Function<TaskId, LinkedTask> resolver;
 
@@ -32,15 +35,15 @@ class LinkedTask extends AbstractTask {
     }
 
     public TaskId nextId() {
-        return (nextId == null) ? null : TaskId.of(nextId);
+        return nextId;
     }
 
     public LinkedTask next() {
-        return resolver.apply(nextId());
+        return resolver.apply(nextId);
     }
 
     public LinkedTask next(LinkedTask next) {
-        this.nextId = (next == null) ? null : next.id.asString();
+        this.nextId = (next == null) ? null : next.id;
         return this;
     }
 
@@ -64,11 +67,30 @@ class LinkedTask extends AbstractTask {
     }
 
     public String title() {
-        return this.<String> getProperty("title").getValue();
+        return (String) value(TITLE);
     }
 
     public LinkedTask title(String title) {
-        this.<String> getProperty("title").setValue(title);
+        value(TITLE, title);
+        return this;
+    }
+
+    public boolean done() {
+        return (Boolean) value(DONE);
+    }
+
+    public LinkedTask done(boolean done) {
+        value(DONE, done);
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<String> tags() {
+        return (Set<String>) value(TAGS);
+    }
+
+    public LinkedTask tags(Set<String> tags) {
+        value(TAGS, tags);
         return this;
     }
 }
@@ -0,0 +1,1276 @@
+package fxtasks.model;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import javafx.beans.*;
+import javafx.collections.*;
+
+import javax.annotation.Nullable;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.*;
+import com.google.common.cache.*;
+import com.google.common.collect.*;
+import com.google.common.util.concurrent.*;
+
+/**
+ * Keeps the tasks of one directory as a chain of {@link LinkedTask}s in memory; subclasses decide how to persist the
+ * changes to that chain.
+ */
+@Slf4j
+public abstract class LinkedTaskStore implements TaskStore {
+    private static final long DEFAULT_MAXIMUM_CHILD_WEIGHT = 100000;
+    private static final String SEARCH_INDEX = ".search-index";
+    private static final int SEARCH_LIMIT = 100;
+    /** the tasks {@link #importAll(Iterator) imported} at once */
+    private static final int IMPORT_BATCH = 10000;
+
+    /** loads child stores in the background, and closes the evicted ones */
+    private static final ListeningExecutorService CHILD_LOADER = MoreExecutors.listeningDecorator(Executors
+            .newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("child-loader-%d").setDaemon(true).build()));
+
+    /** deletes the children of removed tasks in the background, one subtree after the other */
+    private static final ListeningExecutorService SUBTREE_DELETER = MoreExecutors.listeningDecorator(Executors
+            .newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("subtree-deleter").setDaemon(true)
+                    .build()));
+
+    private static final Weigher<TaskId, LinkedTaskStore> TASK_COUNT = new Weigher<TaskId, LinkedTaskStore>() {
+        @Override
+        public int weigh(TaskId parentId, LinkedTaskStore childStore) {
+            childStore.weighedSize = childStore.taskList.size();
+            return 1 + childStore.weighedSize;
+        }
+    };
+
+    /**
+     * Writes the pending changes of an evicted child store at once, on the thread that used the cache, so it can't be
+     * loaded again before they land; and closes it in the background.
+     */
+    private static final RemovalListener<TaskId, LinkedTaskStore> CLOSE_EVICTED =
+            new RemovalListener<TaskId, LinkedTaskStore>() {
+                @Override
+                public void onRemoval(RemovalNotification<TaskId, LinkedTaskStore> notification) {
+                    if (!notification.wasEvicted())
+                        return;
+                    final LinkedTaskStore evicted = notification.getValue();
+                    evicted.flushEvicted();
+                    CHILD_LOADER.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            log.debug("close evicted {}", evicted);
+                            evicted.close();
+                        }
+                    });
+                }
+            };
+
+    private static final FutureCallback<Integer> LOG_FAILED_DELETE = new FutureCallback<Integer>() {
+        @Override
+        public void onSuccess(Integer deleted) {}
+
+        @Override
+        public void onFailure(Throwable e) {
+            log.error("can't delete the children of a removed task", e);
+        }
+    };
+
+    /** only for tasks with valid positions */
+    private static final Comparator<LinkedTask> IN_LIST_ORDER = new Comparator<LinkedTask>() {
+        @Override
+        public int compare(LinkedTask left, LinkedTask right) {
+            return Integer.compare(left.position, right.position);
+        }
+    };
+
+    protected final Function<TaskId, LinkedTask> taskIdResolver = new Function<TaskId, LinkedTask>() {
+        @Override
+        @Nullable
+        public LinkedTask apply(@Nullable TaskId id) {
+            return getById(id);
+        }
+    };
+
+    @VisibleForTesting
+    final TaskList taskList = new TaskList();
+
+    /** all tasks in the {@link #taskList}, by id; must be kept in sync with every add and remove */
+    @VisibleForTesting
+    final Map<TaskId, LinkedTask> taskIndex = Maps.newHashMap();
+
+    /** the tags and the done state of all tasks in the {@link #taskList}; kept in sync like the {@link #taskIndex} */
+    private final TagIndex tagIndex = new TagIndex();
+
+    /**
+     * The {@link LinkedTask#position} of all tasks before this index in the {@link #taskList} is correct; the rest
+     * gets renumbered lazily, so reordering doesn't have to search the list.
+     */
+    private int validPositions = 0;
+
+    /** changes that are persisted already are being applied, so they must not be saved */
+    private boolean patching = false;
+
+    private long maximumChildWeight = DEFAULT_MAXIMUM_CHILD_WEIGHT;
+
+    /**
+     * The child stores that have been used recently, here and in all children: the root store creates the cache, and
+     * the child stores share it, so they are evicted by one budget. They are loaded on the first access, and closed
+     * when they are evicted; so don't keep a child store, but get it from its parent every time.
+     */
+    @VisibleForTesting
+    Cache<TaskId, LinkedTaskStore> childStores = buildChildStores();
+
+    /** the number of tasks when the cache weighed this child store */
+    private volatile int weighedSize;
+
+    /** the cache weighs a child store only when it's put, so it's replaced when its number of tasks changes */
+    private final ListChangeListener<LinkedTask> weightUpdater = new ListChangeListener<LinkedTask>() {
+        @Override
+        public void onChanged(Change<? extends LinkedTask> change) {
+            if (taskList.size() != weighedSize)
+                childStores.asMap().replace(parentId, LinkedTaskStore.this, LinkedTaskStore.this);
+        }
+    };
+
+    /** the live views of this store; weak, so the views that nobody uses anymore are dropped */
+    private final List<WeakReference<LiveView<?>>> views = Lists.newArrayList();
+
+    /** keeps the indexes and views up to date with the properties of the tasks, and saves them */
+    private final InvalidationListener taskListener = new InvalidationListener() {
+        @Override
+        public void invalidated(Observable observable) {
+            LinkedTask task = (LinkedTask) observable;
+            tagIndex.update(task);
+            if (searchIndex != null)
+                searchIndex.put(task.id(), parentId, task.title());
+            updateViews(task);
+            if (!patching)
+                save(task);
+        }
+    };
+
+    /** tells all views about a change of the task list, in one pass */
+    private final ListChangeListener<LinkedTask> viewUpdater = new ListChangeListener<LinkedTask>() {
+        @Override
+        public void onChanged(Change<? extends LinkedTask> change) {
+            List<LiveView<?>> liveViews = liveViews();
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    permutated(change, liveViews);
+                    continue;
+                }
+                for (LiveView<?> view : liveViews) {
+                    if (change.wasRemoved())
+                        view.removed(change.getFrom(), change.getRemoved());
+                    if (change.wasAdded())
+                        view.added(change.getFrom(), change.getAddedSubList());
+                }
+            }
+        }
+    };
+
+    /** the titles of the tasks here and in all children; the child stores share the index of their parent */
+    @Nullable
+    private SearchIndex searchIndex;
+
+    /** where the search index is saved when this store is closed; only for the store that created it */
+    @Nullable
+    private Path searchIndexFile;
+
+    /** changes only when the store moves with its parent task; see {@link #relocate(Path)} */
+    protected Path path;
+
+    /** the store of the parent task, and its id; <code>null</code> for the root store */
+    @Nullable
+    private LinkedTaskStore parentStore;
+    @Nullable
+    private TaskId parentId;
+
+    public LinkedTaskStore(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Limit the memory used by child stores, here and in all children: if their tasks add up to more than that, the
+     * least recently used child stores are closed. A store is weighed by its number of tasks, again whenever it
+     * changes. Only the limit of the root store counts, as the child stores share its cache.
+     */
+    public LinkedTaskStore maximumChildWeight(long maximumChildWeight) {
+        checkArgument(maximumChildWeight >= 0, "maximum child weight must not be negative");
+        checkState(childStores.size() == 0, "child stores are already loaded");
+        this.maximumChildWeight = maximumChildWeight;
+        this.childStores = buildChildStores();
+        return this;
+    }
+
+    /**
+     * Index the titles of the tasks here and in all children, so they can be {@link #search(String) searched}. The
+     * child stores add their tasks when they are loaded; a persistent index is saved in the store directory when the
+     * store is closed, so it also finds the tasks of children that have not been loaded since. Tasks that are gone
+     * from the files, e.g. deleted by a sync, are dropped from the index when their store is loaded.
+     */
+    public LinkedTaskStore searchable(boolean persistent) {
+        checkState(taskList.isEmpty() && childStores.size() == 0, "the store is already loaded");
+        if (persistent) {
+            searchIndexFile = path.resolve(SEARCH_INDEX);
+            try {
+                searchIndex = SearchIndex.load(searchIndexFile);
+            } catch (IOException e) {
+                log.warn("can't load search index " + searchIndexFile + "; rebuilding it", e);
+                searchIndex = new SearchIndex();
+            }
+        } else {
+            searchIndex = new SearchIndex();
+        }
+        return this;
+    }
+
+    /** The ids of the tasks whose titles best match all words of the query, here and in all children */
+    public List<TaskId> search(String query) {
+        checkState(searchIndex != null, "the store at " + path + " is not searchable");
+        return searchIndex.search(query, SEARCH_LIMIT);
+    }
+
+    private Cache<TaskId, LinkedTaskStore> buildChildStores() {
+        return CacheBuilder.newBuilder().maximumWeight(maximumChildWeight).weigher(TASK_COUNT)
+                .removalListener(CLOSE_EVICTED).recordStats().build();
+    }
+
+    /** the child store of the task with that id, from the cache; it's loaded, if it isn't there */
+    private LinkedTaskStore childStore(final TaskId parentId) throws ExecutionException {
+        return childStores.get(parentId, new Callable<LinkedTaskStore>() {
+            @Override
+            public LinkedTaskStore call() {
+                LinkedTaskStore childStore = createChildStore(parentId);
+                childStore.childStores = childStores;
+                childStore.parentStore = LinkedTaskStore.this;
+                childStore.parentId = parentId;
+                childStore.searchIndex = searchIndex;
+                childStore.load();
+                childStore.taskList.addListener(childStore.weightUpdater);
+                log.debug("loaded {}", childStore);
+                return childStore;
+            }
+        });
+    }
+
+    /**
+     * The child store of the task with that id, if it's in the cache; but not one that is left over from an evicted
+     * store, until that has closed it.
+     */
+    @Nullable
+    protected LinkedTaskStore loadedChildStore(TaskId parentId) {
+        LinkedTaskStore childStore = childStores.getIfPresent(parentId);
+        return (childStore == null || childStore.parentStore != this) ? null : childStore;
+    }
+
+    /** the child stores of this store that are in the cache, which holds those of all children, too */
+    private List<LinkedTaskStore> loadedChildStores() {
+        List<LinkedTaskStore> loaded = Lists.newArrayList();
+        for (LinkedTaskStore childStore : childStores.asMap().values()) {
+            if (childStore.parentStore == this)
+                loaded.add(childStore);
+        }
+        return loaded;
+    }
+
+    /** The hits, misses and evictions of the child stores, here and in all children, as they share the cache */
+    public CacheStats childStoreStats() {
+        return childStores.stats();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + path + "|" + taskList.size() + "|" + loadedChildStores().size() + "]";
+    }
+
+    @Override
+    public void addListener(ListChangeListener<Task> listChangeListener) {
+        taskList.addListener(listChangeListener);
+    }
+
+    /**
+     * Put the tasks in the order of the chain of {@link LinkedTask#nextId() next ids} starting at the first id.
+     * 
+     * @throws IllegalStateException
+     *             if the chain links to a task that is not there, or if it loops back into itself
+     */
+    @VisibleForTesting
+    List<LinkedTask> chain(TaskId firstId, Map<TaskId, LinkedTask> tasks) {
+        List<LinkedTask> chain = Lists.newArrayListWithCapacity(tasks.size());
+        TaskId previousId = null;
+        for (TaskId id = firstId; id != null; id = chain.get(chain.size() - 1).nextId()) {
+            LinkedTask task = tasks.get(id);
+            checkState(task != null, "broken chain in " + path + ": "
+                    + ((previousId == null) ? "first" : previousId) + " links to missing " + id);
+            // every task appears only once, so a chain longer than the map must have revisited one
+            checkState(chain.size() < tasks.size(), "cyclic chain in " + path + ": " + previousId + " links back to "
+                    + id);
+            chain.add(task);
+            previousId = id;
+        }
+        if (chain.size() < tasks.size())
+            log.warn("{} tasks in {} are not linked from the first task", tasks.size() - chain.size(), path);
+        return chain;
+    }
+
+    /**
+     * Like {@link #chain(TaskId, Map)}, but a broken chain is repaired instead of rejected, e.g. after a crash between
+     * the writes of a change that was not transactional: the chain is followed from the first id as far as it goes,
+     * then come the pieces of chain that no other task links to, and last the tasks that only link to each other in a
+     * loop. The links of the tasks are not changed.
+     */
+    @VisibleForTesting
+    List<LinkedTask> repairedChain(@Nullable TaskId firstId, Map<TaskId, LinkedTask> tasks) {
+        List<LinkedTask> chain = Lists.newArrayListWithCapacity(tasks.size());
+        Set<TaskId> chained = Sets.newHashSetWithExpectedSize(tasks.size());
+        follow(firstId, tasks, chain, chained);
+        if (chain.size() == tasks.size())
+            return chain;
+
+        Set<TaskId> linkedTo = Sets.newHashSet();
+        for (LinkedTask task : tasks.values()) {
+            if (!chained.contains(task.id()) && task.nextId != null)
+                linkedTo.add(task.nextId);
+        }
+        for (LinkedTask task : tasks.values()) {
+            if (!linkedTo.contains(task.id()))
+                follow(task.id(), tasks, chain, chained);
+        }
+        for (LinkedTask task : tasks.values()) {
+            follow(task.id(), tasks, chain, chained);
+        }
+        return chain;
+    }
+
+    private static void follow(@Nullable TaskId id, Map<TaskId, LinkedTask> tasks, List<LinkedTask> chain,
+            Set<TaskId> chained) {
+        for (LinkedTask task; id != null && (task = tasks.get(id)) != null && chained.add(id); id = task.nextId) {
+            chain.add(task);
+        }
+    }
+
+    /**
+     * Add the loaded tasks at the end in the order of their {@link #repairedChain(TaskId, Map) repaired chain}, and
+     * save the links and the first id that had to be repaired, so the next load finds them intact. A missing task
+     * that is still linked to and has children, e.g. one whose file a sync hasn't delivered yet, is restored empty,
+     * so its children are kept.
+     */
+    protected void addChain(@Nullable TaskId firstId, Map<TaskId, LinkedTask> tasks) {
+        List<LinkedTask> restored = restoreLinkedParents(firstId, tasks);
+        List<LinkedTask> chain = repairedChain(firstId, tasks);
+        List<LinkedTask> relinked = Lists.newArrayList();
+        for (int i = 0; i < chain.size(); i++) {
+            LinkedTask task = chain.get(i);
+            TaskId nextId = (i + 1 < chain.size()) ? chain.get(i + 1).id() : null;
+            if (!Objects.equal(task.nextId, nextId)) {
+                task.nextId = nextId;
+                relinked.add(task);
+            }
+        }
+        addAll(chain);
+
+        boolean firstChanged = chain.isEmpty() ? firstId != null : !chain.get(0).id().equals(firstId);
+        if (restored.isEmpty() && relinked.isEmpty() && !firstChanged)
+            return;
+        log.warn("repair {} links{} in {}", new Object[] { relinked.size(), firstChanged ? " and the first id" : "",
+                this });
+        beginUpdate();
+        boolean completed = false;
+        try {
+            for (LinkedTask task : restored) {
+                log.warn("restore missing task {} with children in {}", task.id(), this);
+                saveCreated(task);
+            }
+            relinked.removeAll(restored);
+            for (LinkedTask task : relinked) {
+                saveLink(task);
+            }
+            if (firstChanged) {
+                if (chain.isEmpty())
+                    removeFirst();
+                else
+                    saveFirst();
+            }
+            completed = true;
+        } finally {
+            endUpdate(completed);
+        }
+    }
+
+    /** put an empty task into the map for every id that is linked to, but missing, and has a children directory */
+    private List<LinkedTask> restoreLinkedParents(@Nullable TaskId firstId, Map<TaskId, LinkedTask> tasks) {
+        Set<TaskId> linkedIds = Sets.newHashSet();
+        if (firstId != null)
+            linkedIds.add(firstId);
+        for (LinkedTask task : tasks.values()) {
+            if (task.nextId != null)
+                linkedIds.add(task.nextId);
+        }
+        List<LinkedTask> restored = Lists.newArrayList();
+        for (TaskId id : linkedIds) {
+            if (!tasks.containsKey(id) && Files.isDirectory(childPath(id))) {
+                LinkedTask task = new LinkedTask().resolver(taskIdResolver).id(id);
+                tasks.put(id, task);
+                restored.add(task);
+            }
+        }
+        return restored;
+    }
+
+    protected void add(LinkedTask task) {
+        index(task, taskList.size());
+        if (validPositions == task.position)
+            validPositions++;
+        taskList.add(task);
+    }
+
+    /** Add the loaded tasks at the end, with only one change event for all of them */
+    protected void addAll(List<LinkedTask> tasks) {
+        int position = taskList.size();
+        for (LinkedTask task : tasks) {
+            index(task, position++);
+        }
+        if (validPositions == taskList.size())
+            validPositions = position;
+        taskList.addAll(tasks);
+    }
+
+    private void index(LinkedTask task, int position) {
+        LinkedTask old = taskIndex.put(task.id(), task);
+        checkState(old == null, "the task store at " + path + " already contains a task " + task.id());
+        task.position = position;
+        tagIndex.add(task);
+        if (searchIndex != null)
+            searchIndex.put(task.id(), parentId, task.title());
+        task.addListener(taskListener);
+    }
+
+    @Override
+    public ObservableList<Task> view(Predicate<? super Task> filter) {
+        return addView(new LiveView<String>(filter, null, taskList));
+    }
+
+    @Override
+    public <K extends Comparable<? super K>> ObservableList<Task> view(Predicate<? super Task> filter,
+            Function<? super Task, K> sortKey) {
+        return addView(new LiveView<K>(filter, checkNotNull(sortKey), taskList));
+    }
+
+    private ObservableList<Task> addView(LiveView<?> view) {
+        if (views.isEmpty())
+            taskList.addListener(viewUpdater);
+        views.add(new WeakReference<LiveView<?>>(view));
+        return view;
+    }
+
+    private List<LiveView<?>> liveViews() {
+        List<LiveView<?>> liveViews = Lists.newArrayListWithCapacity(views.size());
+        for (Iterator<WeakReference<LiveView<?>>> iterator = views.iterator(); iterator.hasNext();) {
+            LiveView<?> view = iterator.next().get();
+            if (view == null)
+                iterator.remove();
+            else
+                liveViews.add(view);
+        }
+        return liveViews;
+    }
+
+    /**
+     * Only the order of the tasks in the permutated range changes, which sorted views don't care about. A sort reports
+     * the whole list as permutated, so the range is narrowed to the tasks that have really moved.
+     */
+    private static void permutated(ListChangeListener.Change<? extends LinkedTask> change,
+            List<LiveView<?>> liveViews) {
+        int from = change.getFrom();
+        int to = change.getTo();
+        while (from < to && change.getPermutation(from) == from)
+            from++;
+        while (to > from && change.getPermutation(to - 1) == to - 1)
+            to--;
+        List<LinkedTask> before = Lists.newArrayListWithCapacity(to - from);
+        for (int i = from; i < to; i++) {
+            before.add(change.getList().get(change.getPermutation(i)));
+        }
+        for (LiveView<?> view : liveViews) {
+            if (view.inStoreOrder()) {
+                view.removed(from, before);
+                view.added(from, change.getList().subList(from, to));
+            }
+        }
+    }
+
+    private void updateViews(LinkedTask task) {
+        if (views.isEmpty())
+            return;
+        int index = -1;
+        for (LiveView<?> view : liveViews()) {
+            if (index < 0 && view.inStoreOrder())
+                index = indexOf(task);
+            view.changed(task, index);
+        }
+    }
+
+    @Override
+    public LinkedTask create() {
+        beginUpdate();
+        boolean completed = false;
+        try {
+            LinkedTask task = doCreate();
+            completed = true;
+            return task;
+        } finally {
+            endUpdate(completed);
+        }
+    }
+
+    private LinkedTask doCreate() {
+        LinkedTask task = new LinkedTask().resolver(taskIdResolver).id(TaskId.random());
+        saveNew(task);
+        if (taskList.isEmpty()) {
+            add(task);
+            saveFirst();
+        } else {
+            LinkedTask lastTask = lastTask();
+            lastTask.next(task);
+            saveLink(lastTask);
+            add(task);
+        }
+        return task;
+    }
+
+    @Override
+    public List<LinkedTask> createAll(Iterable<? extends Task> values) {
+        beginUpdate();
+        boolean completed = false;
+        try {
+            List<LinkedTask> created = doCreateAll(values);
+            completed = true;
+            return created;
+        } finally {
+            endUpdate(completed);
+        }
+    }
+
+    private List<LinkedTask> doCreateAll(Iterable<? extends Task> values) {
+        List<LinkedTask> created = Lists.newArrayList();
+        for (Task value : values) {
+            LinkedTask task = new LinkedTask().resolver(taskIdResolver).id(TaskId.random());
+            copyValues(value, task);
+            if (!created.isEmpty())
+                created.get(created.size() - 1).next(task);
+            created.add(task);
+        }
+        if (created.isEmpty())
+            return created;
+        LinkedTask lastTask = lastTask();
+        addAll(created);
+        // the new tasks before the link to them, so it never points to a missing task
+        for (LinkedTask task : created) {
+            saveCreated(task);
+        }
+        if (lastTask == null) {
+            saveFirst();
+        } else {
+            lastTask.next(created.get(0));
+            saveLink(lastTask);
+        }
+        return created;
+    }
+
+    private static void copyValues(Task from, LinkedTask to) {
+        for (String name : to.propertyNames()) {
+            to.value(name, (from instanceof AbstractTask) ? ((AbstractTask) from).value(name) : from.getProperty(name)
+                    .getValue());
+        }
+    }
+
+    @Override
+    public int importAll(Iterator<? extends Task> values) {
+        int count = 0;
+        while (values.hasNext()) {
+            count += createAll(ImmutableList.copyOf(Iterators.limit(values, IMPORT_BATCH))).size();
+            log.debug("imported {} tasks into {}", count, path);
+        }
+        return count;
+    }
+
+    /** All changes until {@link #endUpdate(boolean)} belong to one logical operation */
+    protected void beginUpdate() {}
+
+    /** The logical operation that has {@link #beginUpdate() begun} has completed, or failed with an exception */
+    protected void endUpdate(boolean completed) {}
+
+    /** A new task has been created. Stores that write a task only when it's first changed don't have to do anything. */
+    protected void saveNew(LinkedTask task) {}
+
+    /**
+     * A task has been {@link #createAll(Iterable) created} with its values and its link to the next one; by default
+     * it's saved as new, then its properties, then its link
+     */
+    protected void saveCreated(LinkedTask task) {
+        saveNew(task);
+        save(task);
+        if (!task.isLast())
+            saveLink(task);
+    }
+
+    /** The first task has changed */
+    @VisibleForTesting
+    protected abstract void saveFirst();
+
+    /** The last task has been removed */
+    @VisibleForTesting
+    protected abstract void removeFirst();
+
+    /** A property of the task has changed */
+    @VisibleForTesting
+    protected abstract void save(LinkedTask task);
+
+    /** The next task of this task has changed; by default the task is {@link #save(LinkedTask) saved} as a whole */
+    protected void saveLink(LinkedTask task) {
+        save(task);
+    }
+
+    /** The task has been removed */
+    protected abstract void delete(LinkedTask task);
+
+    /** Create the store for the children of the task with that id, in its {@link #childPath(TaskId) directory} */
+    protected abstract LinkedTaskStore createChildStore(TaskId parentId);
+
+    /** the directory of the children of the task with that id */
+    protected Path childPath(TaskId parentId) {
+        return path.resolve(parentId.asString() + "@");
+    }
+
+    /** The directory of the store has been moved there, with its children; subclasses update their paths, too */
+    protected void relocate(Path newPath) {
+        log.debug("relocate {} to {}", path, newPath);
+        this.path = newPath;
+        for (LinkedTaskStore childStore : loadedChildStores()) {
+            childStore.relocate(childPath(childStore.parentId));
+        }
+    }
+
+    protected LinkedTask lastTask() {
+        return taskList.isEmpty() ? null : taskList.get(taskList.size() - 1);
+    }
+
+    @Override
+    public void moveUp(Task task) {
+        beginUpdate();
+        boolean completed = false;
+        try {
+            doMoveUp(task);
+            completed = true;
+        } finally {
+            endUpdate(completed);
+        }
+    }
+
+    private void doMoveUp(Task task) {
+        LinkedTask moving = (LinkedTask) task;
+        int index = indexOf(moving);
+        if (index == 0) {
+            log.debug("{} is already first task", task);
+            return;
+        }
+
+        LinkedTask swapped = taskList.get(index - 1);
+        LinkedTask previous = (index == 1) ? null : taskList.get(index - 2);
+        LinkedTask next = moving.next();
+
+        moveByOffset(moving, index, -1);
+
+        if (previous != null)
+            previous.next(moving);
+        moving.next(swapped);
+        swapped.next(next);
+        // next.next remains
+
+        if (previous == null)
+            saveFirst();
+        else
+            saveLink(previous);
+        saveLink(swapped);
+        saveLink(moving);
+        if (next != null) {
+            saveLink(next);
+        }
+    }
+
+    @Override
+    public void moveDown(Task task) {
+        beginUpdate();
+        boolean completed = false;
+        try {
+            doMoveDown(task);
+            completed = true;
+        } finally {
+            endUpdate(completed);
+        }
+    }
+
+    private void doMoveDown(Task task) {
+        LinkedTask moving = (LinkedTask) task;
+        int index = indexOf(moving);
+        if (index + 1 >= taskList.size()) {
+            log.debug("{} is already last task", task);
+            return;
+        }
+
+        LinkedTask previous = (index == 0) ? null : taskList.get(index - 1);
+        LinkedTask swapped = moving.next();
+        LinkedTask next = swapped.next();
+
+        moveByOffset(moving, index, 1);
+
+        if (previous == null)
+            saveFirst();
+        else
+            previous.next(swapped);
+        moving.next(next);
+        swapped.next(moving);
+        // next.next remains
+
+        if (previous != null)
+            saveLink(previous);
+        saveLink(moving);
+        saveLink(swapped);
+        if (next != null) {
+            saveLink(next);
+        }
+    }
+
+    @Override
+    public void moveTo(Task task, int index) {
+        beginUpdate();
+        boolean completed = false;
+        try {
+            doMoveTo((LinkedTask) task, index);
+            completed = true;
+        } finally {
+            endUpdate(completed);
+        }
+    }
+
+    @Override
+    public void moveAfter(Task task, @Nullable Task previous) {
+        checkArgument(task != previous, "can't move a task after itself");
+        if (previous == null) {
+            moveTo(task, 0);
+        } else {
+            int index = indexOf((LinkedTask) previous);
+            moveTo(task, (index < indexOf((LinkedTask) task)) ? index + 1 : index);
+        }
+    }
+
+    private void doMoveTo(LinkedTask moving, int to) {
+        checkElementIndex(to, taskList.size());
+        int from = indexOf(moving);
+        if (from == to)
+            return;
+
+        LinkedTask oldPrevious = (from == 0) ? null : taskList.get(from - 1);
+        LinkedTask newPrevious;
+        LinkedTask newNext;
+        if (to < from) {
+            newPrevious = (to == 0) ? null : taskList.get(to - 1);
+            newNext = taskList.get(to);
+        } else {
+            newPrevious = taskList.get(to);
+            newNext = (to + 1 < taskList.size()) ? taskList.get(to + 1) : null;
+        }
+
+        if (oldPrevious != null)
+            oldPrevious.nextId = moving.nextId;
+        if (newPrevious != null)
+            newPrevious.next(moving);
+        moving.next(newNext);
+        permutate(from, to);
+
+        if (oldPrevious == null || newPrevious == null)
+            saveFirst();
+        if (oldPrevious != null)
+            saveLink(oldPrevious);
+        if (newPrevious != null)
+            saveLink(newPrevious);
+        saveLink(moving);
+    }
+
+    /**
+     * move the task at that index with one permutation change of the range in between, instead of a remove and an add;
+     * only the valid positions in that range are renumbered, the rest get renumbered lazily anyway
+     */
+    private void permutate(int from, int to) {
+        log.debug("move from {} to {}", from, to);
+        taskList.move(from, to);
+        for (int i = Math.min(from, to); i <= Math.max(from, to) && i < validPositions; i++) {
+            taskList.get(i).position = i;
+        }
+    }
+
+    private void moveByOffset(LinkedTask task, int index, int delta) {
+        log.debug("move from {} to {}", index, index + delta);
+        LinkedTask swapped = taskList.get(index + delta);
+        taskList.remove(index);
+        taskList.add(index + delta, task);
+        task.position = index + delta;
+        swapped.position = index;
+        log.debug("--> {}", taskList);
+    }
+
+    @VisibleForTesting
+    int indexOf(LinkedTask task) {
+        int position = task.position;
+        if (position < validPositions && taskList.get(position) == task)
+            return position;
+        for (int i = validPositions; i < taskList.size(); i++) {
+            taskList.get(i).position = i;
+        }
+        validPositions = taskList.size();
+        position = task.position;
+        checkState(position < taskList.size() && taskList.get(position) == task, "the task store at " + path
+                + " doesn't contain a task " + task.id());
+        return position;
+    }
+
+    @Override
+    public LinkedTask getById(TaskId id) {
+        if (id == null)
+            return null;
+        LinkedTask task = taskIndex.get(id);
+        if (task == null)
+            throw new IllegalArgumentException("no task found with id " + id);
+        return task;
+    }
+
+    @Override
+    public Set<String> tags() {
+        return tagIndex.tags();
+    }
+
+    @Override
+    public List<Task> filter(TagFilter filter) {
+        List<LinkedTask> tasks = tagIndex.filter(filter);
+        // renumber the positions once, so the comparisons don't have to
+        if (!tasks.isEmpty())
+            indexOf(lastTask());
+        Collections.sort(tasks, IN_LIST_ORDER);
+        return ImmutableList.<Task> copyOf(tasks);
+    }
+
+    @Override
+    public void moveIn(Task task) {
+        LinkedTask moving = (LinkedTask) task;
+        int index = indexOf(moving);
+        if (index == 0) {
+            log.debug("{} has no previous task to move into", task);
+            return;
+        }
+        LinkedTaskStore target = (LinkedTaskStore) childrenOf(taskList.get(index - 1));
+        reparent(moving, target, target.taskList.size());
+    }
+
+    @Override
+    public void moveOut(Task task) {
+        if (parentStore == null) {
+            log.debug("{} is a top level task already", task);
+            return;
+        }
+        LinkedTask moving = (LinkedTask) task;
+        int parentIndex = parentStore.indexOf(parentStore.getById(parentId));
+        reparent(moving, parentStore, parentIndex + 1);
+    }
+
+    /**
+     * Move the task to that index of the other store. Its children are not copied: their directory is moved at once,
+     * and their store, if it's loaded, goes with it. The task is saved in the other store before anything is removed
+     * here, so a crash may leave it in both, but never in neither. The stores are flushed on the way, so this must not
+     * be called within an update.
+     */
+    private void reparent(LinkedTask moving, LinkedTaskStore target, int targetIndex) {
+        log.debug("move {} from {} to {}", new Object[] { moving, this, target });
+        // the pending writes go to the directories as they are now
+        flush();
+        int index = indexOf(moving);
+        LinkedTask previous = (index == 0) ? null : taskList.get(index - 1);
+        TaskId nextId = moving.nextId;
+        unindex(moving);
+        validPositions = Math.min(validPositions, index);
+        taskList.remove(index);
+
+        target.insert(moving, targetIndex);
+        target.flush();
+        moveChildren(moving.id(), target);
+
+        beginUpdate();
+        boolean completed = false;
+        try {
+            delete(moving);
+            if (previous != null) {
+                previous.nextId = nextId;
+                saveLink(previous);
+            } else if (!taskList.isEmpty()) {
+                saveFirst();
+            } else {
+                removeFirst();
+            }
+            completed = true;
+        } finally {
+            endUpdate(completed);
+        }
+    }
+
+    /** add a task from another store at that index, and save it like a new one */
+    private void insert(LinkedTask task, int index) {
+        checkPositionIndex(index, taskList.size());
+        beginUpdate();
+        boolean completed = false;
+        try {
+            LinkedTask previous = (index == 0) ? null : taskList.get(index - 1);
+            task.resolver(taskIdResolver).next((index < taskList.size()) ? taskList.get(index) : null);
+            index(task, index);
+            validPositions = Math.min(validPositions, index);
+            taskList.add(index, task);
+            saveCreated(task);
+            if (previous == null) {
+                saveFirst();
+            } else {
+                previous.next(task);
+                saveLink(previous);
+            }
+            completed = true;
+        } finally {
+            endUpdate(completed);
+        }
+    }
+
+    /** move the directory with the children of the task, and their store, if it's loaded */
+    private void moveChildren(TaskId id, LinkedTaskStore target) {
+        Path from = childPath(id);
+        Path to = target.childPath(id);
+        if (Files.isDirectory(from)) {
+            try {
+                Files.createDirectories(target.path);
+                Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        LinkedTaskStore children = loadedChildStore(id);
+        if (children != null) {
+            // the cache is shared, so it stays there with its children
+            children.relocate(to);
+            children.parentStore = target;
+        }
+    }
+
+    @Override
+    public Task createChildOf(Task parent) {
+        return childrenOf(parent).create();
+    }
+
+    @Override
+    public TaskStore childrenOf(Task parent) {
+        try {
+            LinkedTaskStore childStore = childStore(parent.id());
+            if (childStore.parentStore != this) {
+                // left over from an evicted store; whoever removes it from the cache closes it
+                if (childStores.asMap().remove(parent.id(), childStore))
+                    childStore.close();
+                childStore = childStore(parent.id());
+            }
+            return childStore;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    @Override
+    public ListenableFuture<TaskStore> loadChildrenOf(final Task parent) {
+        // even if it's loaded already, so the cache counts only one hit or miss
+        return CHILD_LOADER.submit(new Callable<TaskStore>() {
+            @Override
+            public TaskStore call() {
+                return childrenOf(parent);
+            }
+        });
+    }
+
+    @Override
+    public void remove(Task task) {
+        Futures.addCallback(remove(task, Progress.NONE), LOG_FAILED_DELETE);
+    }
+
+    /**
+     * The task leaves the list, and its child store leaves the cache, at once; the child store is closed and the
+     * directory of the children is deleted by the {@link #SUBTREE_DELETER}.
+     */
+    @Override
+    public ListenableFuture<Integer> remove(Task task, Progress progress) {
+        checkNotNull(progress);
+        beginUpdate();
+        boolean completed = false;
+        try {
+            doRemove(task);
+            completed = true;
+        } finally {
+            endUpdate(completed);
+        }
+        // not evicted, so it isn't closed
+        LinkedTaskStore children = childStores.asMap().remove(task.id());
+        return deleteSubtree(task.id(), children, progress);
+    }
+
+    /** the subtree is gone from the search index at once, even the tasks of child stores that aren't loaded */
+    private ListenableFuture<Integer> deleteSubtree(TaskId id, @Nullable final LinkedTaskStore children,
+            final Progress progress) {
+        if (searchIndex != null)
+            searchIndex.removeDescendants(id);
+        final Path directory = childPath(id);
+        return SUBTREE_DELETER.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                if (children != null) {
+                    // so no pending write brings a file back
+                    children.flush();
+                    children.close();
+                }
+                return Files.exists(directory) ? deleteTree(directory, progress) : 0;
+            }
+        });
+    }
+
+    /** @return the number of deleted files and directories */
+    private int deleteTree(Path directory, final Progress progress) throws IOException {
+        final int[] deleted = { 0 };
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                progress.worked(++deleted[0]);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path subdirectory, IOException e) throws IOException {
+                if (e != null)
+                    throw e;
+                Files.delete(subdirectory);
+                progress.worked(++deleted[0]);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        log.debug("deleted {} files and directories in {}", deleted[0], directory);
+        return deleted[0];
+    }
+
+    /**
+     * The tasks have been loaded: drop those that are gone from the search index, e.g. deleted by a sync while the
+     * store wasn't loaded; and at the startup of the root store, the orphaned children.
+     */
+    protected void loaded() {
+        if (searchIndex != null)
+            searchIndex.retainChildren(parentId, taskIndex.keySet());
+        if (parentStore == null)
+            deleteOrphans();
+    }
+
+    /**
+     * Delete the directories of children whose task is gone, e.g. because an older version removed only the task; in
+     * the background, like the children of a {@link #remove(Task, Progress) removed} task. A task that is still
+     * linked to is in the {@link #addChain(TaskId, Map) repaired chain}, so only a directory whose task is neither in
+     * the files nor in the chain is deleted.
+     */
+    private void deleteOrphans() {
+        if (!Files.isDirectory(path))
+            return;
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(path, "*@")) {
+            for (Path directory : directories) {
+                String name = directory.getFileName().toString();
+                TaskId id;
+                try {
+                    id = TaskId.of(name.substring(0, name.length() - 1));
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (!taskIndex.containsKey(id) && !Files.exists(path.resolve(id.asString()))
+                        && Files.isDirectory(directory)) {
+                    log.info("delete orphaned {}", directory);
+                    Futures.addCallback(deleteSubtree(id, null, Progress.NONE), LOG_FAILED_DELETE);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("can't look for orphaned children in " + path, e);
+        }
+    }
+
+    /** wait until the subtrees that are deleted so far are gone */
+    @VisibleForTesting
+    static void awaitSubtreeDeletions() {
+        Futures.getUnchecked(SUBTREE_DELETER.submit(new Runnable() {
+            @Override
+            public void run() {}
+        }));
+    }
+
+    /**
+     * The neighbours are found by position, so only the previous task, or the first id, is relinked. The task is
+     * deleted before, so if the relink is lost in a crash, the chain only links to a missing task, and the load
+     * {@link #repairedChain(TaskId, Map) repairs} it in the same order.
+     */
+    private void doRemove(Task task) {
+        checkNotNull(task);
+
+        LinkedTask removed = taskIndex.get(task.id());
+        checkState(removed != null, "the task store at " + path + " doesn't contain a task " + task.id());
+        delete(removed);
+
+        int index = indexOf(removed);
+        unindex(removed);
+        validPositions = Math.min(validPositions, index);
+        taskList.remove(index);
+        if (taskList.isEmpty()) {
+            removeFirst();
+        } else if (index == 0) {
+            saveFirst();
+        } else {
+            LinkedTask previous = taskList.get(index - 1);
+            previous.nextId = removed.nextId;
+            saveLink(previous);
+        }
+    }
+
+    private void unindex(LinkedTask task) {
+        task.removeListener(taskListener);
+        taskIndex.remove(task.id());
+        tagIndex.remove(task);
+        if (searchIndex != null)
+            searchIndex.remove(task.id());
+    }
+
+    /**
+     * Apply changes that somebody else made to the persisted tasks, e.g. a sync between machines, without saving them
+     * again: update the changed tasks, add the new ones, drop the deleted ones, and follow the new chain with as few
+     * list changes as possible. If the chain is broken, e.g. because a sync is not complete, the tasks stay in their
+     * order, and the new ones are added at the end, until the next patch.
+     * 
+     * @param changed
+     *            the tasks as they are persisted now, including new tasks
+     * @param firstId
+     *            the id of the first task now
+     */
+    protected void patch(Collection<LinkedTask> changed, Collection<TaskId> deleted, @Nullable TaskId firstId) {
+        patching = true;
+        try {
+            doPatch(changed, deleted, firstId);
+        } finally {
+            patching = false;
+        }
+    }
+
+    private void doPatch(Collection<LinkedTask> changed, Collection<TaskId> deleted, @Nullable TaskId firstId) {
+        Map<TaskId, LinkedTask> tasks = Maps.newHashMap(taskIndex);
+        for (LinkedTask update : changed) {
+            LinkedTask task = tasks.get(update.id());
+            if (task == null) {
+                tasks.put(update.id(), update.resolver(taskIdResolver));
+            } else {
+                task.nextId = update.nextId;
+                for (String name : task.propertyNames()) {
+                    task.value(name, update.value(name));
+                }
+            }
+        }
+        tasks.keySet().removeAll(deleted);
+
+        List<LinkedTask> order = Lists.newArrayListWithCapacity(tasks.size());
+        try {
+            if (firstId != null)
+                order.addAll(chain(firstId, tasks));
+        } catch (IllegalStateException e) {
+            log.warn("keep the order of the tasks until the chain is complete: {}", e.getMessage());
+            order.clear();
+        }
+        Set<LinkedTask> ordered = Sets.newHashSet(order);
+        for (LinkedTask task : Iterables.concat(taskList, tasks.values())) {
+            if (tasks.get(task.id()) == task && ordered.add(task))
+                order.add(task);
+        }
+
+        for (TaskId id : deleted) {
+            LinkedTask removed = taskIndex.get(id);
+            if (removed != null) {
+                int index = indexOf(removed);
+                unindex(removed);
+                validPositions = Math.min(validPositions, index);
+                taskList.remove(index);
+            }
+        }
+        for (int i = 0; i < order.size(); i++) {
+            LinkedTask task = order.get(i);
+            if (i < taskList.size() && taskList.get(i) == task)
+                continue;
+            if (taskIndex.get(task.id()) == task) {
+                taskList.remove(indexOf(task));
+            } else {
+                index(task, i);
+            }
+            validPositions = Math.min(validPositions, i);
+            taskList.add(i, task);
+        }
+        log.debug("patched {}", this);
+    }
+
+    @Override
+    public void removeChildOf(Task parent, Task child) {
+        childrenOf(parent).remove(child);
+    }
+
+    /**
+     * This store has been evicted from the cache: write its pending changes and those of its children before it's
+     * loaded again. It's called by the thread that used the cache, which may be within an update.
+     */
+    protected void flushEvicted() {
+        flush();
+    }
+
+    /** Write all pending changes of this store and its children */
+    @Override
+    public void flush() {
+        for (TaskStore childStore : loadedChildStores()) {
+            childStore.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (LinkedTaskStore childStore : loadedChildStores()) {
+            // unless it has been evicted meanwhile, and is closed by the removal listener
+            if (childStores.asMap().remove(childStore.parentId, childStore))
+                childStore.close();
+        }
+        if (searchIndexFile != null && Files.isDirectory(path)) {
+            try {
+                searchIndex.save(searchIndexFile);
+            } catch (IOException e) {
+                log.warn("can't save search index " + searchIndexFile, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package fxtasks.model;
+
+import java.util.*;
+
+import javafx.beans.InvalidationListener;
+import javafx.collections.*;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+import com.google.common.primitives.Longs;
+
+/**
+ * A read only list of the tasks of a store that match a filter, either in the order of the store or sorted by a key.
+ * The store tells it about every change of its list and of the properties of its tasks; a property change only needs
+ * a binary search to find the task in the view, and another one to find its new place.
+ * <p>
+ * The store keeps its views weakly, so a view is updated as long as somebody uses it.
+ */
+class LiveView<K extends Comparable<? super K>> extends ForwardingList<Task> implements ObservableList<Task> {
+    private final Predicate<? super Task> filter;
+    /** <code>null</code> for the order of the store */
+    @Nullable
+    private final Function<? super Task, K> sortKey;
+    private final Ordering<K> keyOrder = Ordering.<K> natural().nullsFirst();
+
+    private final ObservableList<Task> items = FXCollections.observableArrayList();
+    private final ObservableList<Task> readOnly = FXCollections.unmodifiableObservableList(items);
+
+    /** in store order: the indexes of the items in the task list of the store, ascending */
+    private int[] sourceIndexes = new int[16];
+
+    /** sorted: the keys of the items when they were sorted in, to find them again when their key has changed */
+    private final List<K> keys = Lists.newArrayList();
+    private final Map<Task, K> keysByTask = Maps.newHashMap();
+
+    LiveView(Predicate<? super Task> filter, @Nullable Function<? super Task, K> sortKey, List<? extends Task> tasks) {
+        this.filter = filter;
+        this.sortKey = sortKey;
+        added(0, tasks);
+    }
+
+    boolean inStoreOrder() {
+        return sortKey == null;
+    }
+
+    @Override
+    protected List<Task> delegate() {
+        return readOnly;
+    }
+
+    /** these tasks have been removed from that index of the task list */
+    void removed(int from, List<? extends Task> removed) {
+        if (inStoreOrder()) {
+            int size = items.size();
+            int low = lowerBound(from);
+            int high = lowerBound(from + removed.size());
+            System.arraycopy(sourceIndexes, high, sourceIndexes, low, size - high);
+            shiftSourceIndexes(low, size - (high - low), -removed.size());
+            if (low < high)
+                items.remove(low, high);
+        } else {
+            for (Task task : removed) {
+                if (keysByTask.containsKey(task))
+                    removeSorted(task);
+            }
+        }
+    }
+
+    /** these tasks have been added to the task list at that index */
+    void added(int from, List<? extends Task> added) {
+        if (inStoreOrder()) {
+            List<Task> matching = Lists.newArrayList();
+            int[] matchingIndexes = new int[added.size()];
+            for (int i = 0; i < added.size(); i++) {
+                if (filter.apply(added.get(i))) {
+                    matchingIndexes[matching.size()] = from + i;
+                    matching.add(added.get(i));
+                }
+            }
+            int size = items.size();
+            int low = lowerBound(from);
+            shiftSourceIndexes(low, size, added.size());
+            if (matching.isEmpty())
+                return;
+            ensureCapacity(size + matching.size());
+            System.arraycopy(sourceIndexes, low, sourceIndexes, low + matching.size(), size - low);
+            System.arraycopy(matchingIndexes, 0, sourceIndexes, low, matching.size());
+            items.addAll(low, matching);
+        } else {
+            for (Task task : added) {
+                if (filter.apply(task))
+                    insertSorted(task, sortKey.apply(task));
+            }
+        }
+    }
+
+    /**
+     * A property of the task has changed, so it may have to be added, removed, or moved
+     *
+     * @param index
+     *            the index of the task in the task list; only needed {@link #inStoreOrder() in store order}
+     */
+    void changed(Task task, int index) {
+        boolean matches = filter.apply(task);
+        if (inStoreOrder()) {
+            int position = Arrays.binarySearch(sourceIndexes, 0, items.size(), index);
+            if (position >= 0 && !matches) {
+                System.arraycopy(sourceIndexes, position + 1, sourceIndexes, position, items.size() - position - 1);
+                items.remove(position);
+            } else if (position < 0 && matches) {
+                position = -position - 1;
+                ensureCapacity(items.size() + 1);
+                System.arraycopy(sourceIndexes, position, sourceIndexes, position + 1, items.size() - position);
+                sourceIndexes[position] = index;
+                items.add(position, task);
+            }
+        } else {
+            boolean included = keysByTask.containsKey(task);
+            K key = matches ? sortKey.apply(task) : null;
+            if (included && matches && keyOrder.compare(keysByTask.get(task), key) == 0)
+                return;
+            if (included)
+                removeSorted(task);
+            if (matches)
+                insertSorted(task, key);
+        }
+    }
+
+    /** the first position with a source index that is not less than that one */
+    private int lowerBound(int sourceIndex) {
+        int position = Arrays.binarySearch(sourceIndexes, 0, items.size(), sourceIndex);
+        return (position >= 0) ? position : -position - 1;
+    }
+
+    private void shiftSourceIndexes(int from, int to, int delta) {
+        for (int i = from; i < to; i++) {
+            sourceIndexes[i] += delta;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (sourceIndexes.length < size)
+            sourceIndexes = Arrays.copyOf(sourceIndexes, Math.max(size, sourceIndexes.length * 2));
+    }
+
+    private void insertSorted(Task task, K key) {
+        int position = -searchSorted(task, key) - 1;
+        keys.add(position, key);
+        keysByTask.put(task, key);
+        items.add(position, task);
+    }
+
+    private void removeSorted(Task task) {
+        int position = searchSorted(task, keysByTask.remove(task));
+        keys.remove(position);
+        items.remove(position);
+    }
+
+    /** like {@link Collections#binarySearch(List, Object)}; tasks with equal keys are ordered by id */
+    private int searchSorted(Task task, K key) {
+        int low = 0;
+        int high = keys.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int result = keyOrder.compare(keys.get(middle), key);
+            if (result == 0)
+                result = compareIds(items.get(middle).id(), task.id());
+            if (result < 0)
+                low = middle + 1;
+            else if (result > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -(low + 1);
+    }
+
+    private static int compareIds(TaskId left, TaskId right) {
+        int result = Longs.compare(left.mostSignificantBits(), right.mostSignificantBits());
+        return (result != 0) ? result : Longs.compare(left.leastSignificantBits(), right.leastSignificantBits());
+    }
+
+    @Override
+    public void addListener(InvalidationListener listener) {
+        readOnly.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(InvalidationListener listener) {
+        readOnly.removeListener(listener);
+    }
+
+    @Override
+    public void addListener(ListChangeListener<? super Task> listener) {
+        readOnly.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(ListChangeListener<? super Task> listener) {
+        readOnly.removeListener(listener);
+    }
+
+    @Override
+    public boolean addAll(Task... tasks) {
+        return readOnly.addAll(tasks);
+    }
+
+    @Override
+    public boolean setAll(Task... tasks) {
+        return readOnly.setAll(tasks);
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends Task> tasks) {
+        return readOnly.setAll(tasks);
+    }
+
+    @Override
+    public boolean removeAll(Task... tasks) {
+        return readOnly.removeAll(tasks);
+    }
+
+    @Override
+    public boolean retainAll(Task... tasks) {
+        return readOnly.retainAll(tasks);
+    }
+
+    @Override
+    public void remove(int from, int to) {
+        readOnly.remove(from, to);
+    }
+}
@@ -0,0 +1,112 @@
+package fxtasks.model;
+
+import java.io.*;
+import java.util.*;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+
+/**
+ * The types of values a {@link Task} property can hold, and how to convert them to and from text and binary. Binary
+ * strings are written as their length in UTF-8 bytes and the bytes, as {@link DataOutput#writeUTF(String)} is limited
+ * to 64k bytes; older formats with such short strings can still be read.
+ */
+enum PropertyType {
+    STRING {
+        @Override
+        public Object parse(String text) {
+            return text;
+        }
+
+        @Override
+        public void write(DataOutput out, Object value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null)
+                writeString(out, (String) value);
+        }
+
+        @Override
+        public Object read(DataInput in, boolean shortStrings) throws IOException {
+            return in.readBoolean() ? readString(in, shortStrings) : null;
+        }
+    },
+    BOOLEAN {
+        @Override
+        public Object parse(String text) {
+            return Boolean.valueOf(text);
+        }
+
+        @Override
+        public void write(DataOutput out, Object value) throws IOException {
+            out.writeBoolean((Boolean) value);
+        }
+
+        @Override
+        public Object read(DataInput in, boolean shortStrings) throws IOException {
+            return in.readBoolean();
+        }
+    },
+    /** a sorted set of {@link Tag} ids; as text, they are separated by commas */
+    TAGS {
+        private final Joiner joiner = Joiner.on(Tag.SEPARATOR);
+        private final Splitter splitter = Splitter.on(Tag.SEPARATOR).trimResults().omitEmptyStrings();
+
+        @Override
+        public String format(Object value) {
+            Collection<?> tags = (Collection<?>) value;
+            return tags.isEmpty() ? null : joiner.join(tags);
+        }
+
+        @Override
+        public Object parse(String text) {
+            return ImmutableSortedSet.copyOf(splitter.split(text));
+        }
+
+        @Override
+        public void write(DataOutput out, Object value) throws IOException {
+            Collection<?> tags = (Collection<?>) value;
+            out.writeShort(tags.size());
+            for (Object tag : tags) {
+                writeString(out, (String) tag);
+            }
+        }
+
+        @Override
+        public Object read(DataInput in, boolean shortStrings) throws IOException {
+            int count = in.readUnsignedShort();
+            List<String> tags = Lists.newArrayListWithCapacity(count);
+            for (int i = 0; i < count; i++) {
+                tags.add(readString(in, shortStrings));
+            }
+            return ImmutableSortedSet.copyOf(tags);
+        }
+    };
+
+    public String format(Object value) {
+        return (value == null) ? null : value.toString();
+    }
+
+    public abstract Object parse(String text);
+
+    public abstract void write(DataOutput out, Object value) throws IOException;
+
+    /** @param shortStrings the strings were written with {@link DataOutput#writeUTF(String)}, by an older format */
+    public abstract Object read(DataInput in, boolean shortStrings) throws IOException;
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in, boolean shortStrings) throws IOException {
+        if (shortStrings)
+            return in.readUTF();
+        int length = in.readInt();
+        if (length < 0)
+            throw new StreamCorruptedException("invalid string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,300 @@
+package fxtasks.model;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import javax.annotation.Nullable;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.base.*;
+import com.google.common.base.Objects;
+import com.google.common.collect.*;
+import com.google.common.primitives.*;
+
+/**
+ * An inverted index of the words in the titles of tasks, e.g. of a store and all of its child stores. A search finds
+ * the tasks that have all words of the query, also as prefixes of longer words; the tasks with more exact matches and
+ * shorter titles come first.
+ * <p>
+ * Every title is indexed with the id of the parent task, so a store can drop the tasks that are gone from it when it's
+ * loaded, and the whole subtree of a removed task can be dropped, even if its stores aren't loaded.
+ * <p>
+ * The index is thread safe, as child stores are loaded in the background.
+ */
+@Slf4j
+public class SearchIndex {
+    private static final Splitter WORDS = Splitter.on(CharMatcher.JAVA_LETTER_OR_DIGIT.negate()).omitEmptyStrings();
+    private static final int MAGIC = 0xF7A55E;
+    private static final int VERSION = 2;
+
+    private static final int EXACT = 2;
+    private static final int PREFIX = 1;
+
+    /** Load a saved index; an empty index if there is none */
+    public static SearchIndex load(Path file) throws IOException {
+        SearchIndex index = new SearchIndex();
+        if (!Files.exists(file))
+            return index;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION)
+                throw new IOException("not a search index: " + file);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                TaskId id = readId(in);
+                TaskId parentId = in.readBoolean() ? readId(in) : null;
+                byte[] title = new byte[in.readInt()];
+                in.readFully(title);
+                index.put(id, parentId, new String(title, Charsets.UTF_8));
+            }
+        }
+        log.debug("loaded search index with {} titles from {}", index.size(), file);
+        return index;
+    }
+
+    private static TaskId readId(DataInput in) throws IOException {
+        return TaskId.of(in.readLong(), in.readLong());
+    }
+
+    private static void writeId(DataOutput out, TaskId id) throws IOException {
+        out.writeLong(id.mostSignificantBits());
+        out.writeLong(id.leastSignificantBits());
+    }
+
+    private static String[] words(String text) {
+        return Iterables.toArray(WORDS.split(text.toLowerCase(Locale.ROOT)), String.class);
+    }
+
+    /** an indexed title */
+    private static class Entry {
+        final TaskId id;
+        @Nullable
+        final TaskId parentId;
+        final String title;
+        final String[] words;
+        /** the search that has seen this entry last, so it's scored only once */
+        int seen;
+
+        Entry(TaskId id, @Nullable TaskId parentId, String title) {
+            this.id = id;
+            this.parentId = parentId;
+            this.title = title;
+            this.words = words(title);
+        }
+
+        /** the sum of the best match of every query word, or 0 if a query word doesn't match */
+        int score(String[] query) {
+            int score = 0;
+            for (String queryWord : query) {
+                int best = 0;
+                for (String word : words) {
+                    if (word.equals(queryWord)) {
+                        best = EXACT;
+                        break;
+                    } else if (word.startsWith(queryWord)) {
+                        best = PREFIX;
+                    }
+                }
+                if (best == 0)
+                    return 0;
+                score += best;
+            }
+            return score;
+        }
+    }
+
+    /** the order of the entries with the same score: short titles first */
+    private static final Comparator<Entry> RANK = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry left, Entry right) {
+            int result = Ints.compare(left.title.length(), right.title.length());
+            if (result == 0)
+                result = left.title.compareTo(right.title);
+            if (result == 0)
+                result = Longs.compare(left.id.mostSignificantBits(), right.id.mostSignificantBits());
+            if (result == 0)
+                result = Longs.compare(left.id.leastSignificantBits(), right.id.leastSignificantBits());
+            return result;
+        }
+    };
+
+    /** an entry and its score for one search */
+    private static class Hit implements Comparable<Hit> {
+        final Entry entry;
+        final int score;
+
+        Hit(Entry entry, int score) {
+            this.entry = entry;
+            this.score = score;
+        }
+
+        /** the better hit first */
+        @Override
+        public int compareTo(Hit other) {
+            int byScore = Ints.compare(other.score, score);
+            return (byScore != 0) ? byScore : RANK.compare(entry, other.entry);
+        }
+    }
+
+    /** the entries of every word, in {@link #RANK} order; guarded by <code>this</code> */
+    private final NavigableMap<String, SortedSet<Entry>> entriesByWord = Maps.newTreeMap();
+    /** guarded by <code>this</code> */
+    private final Map<TaskId, Entry> entries = Maps.newHashMap();
+    /**
+     * The ids of the indexed tasks by the id of their parent, <code>null</code> for the root store; guarded by
+     * <code>this</code>
+     */
+    private final SetMultimap<TaskId, TaskId> idsByParent = HashMultimap.create();
+    /** guarded by <code>this</code> */
+    private int searches = 0;
+
+    /** Index the title of a task without a parent */
+    public void put(TaskId id, @Nullable String title) {
+        put(id, null, title);
+    }
+
+    /** Index the title of that task, instead of its previous title, as a child of that parent */
+    public synchronized void put(TaskId id, @Nullable TaskId parentId, @Nullable String title) {
+        Entry old = entries.get(id);
+        if (old != null && old.title.equals(title) && Objects.equal(old.parentId, parentId))
+            return;
+        remove(id);
+        if (title == null)
+            return;
+        Entry entry = new Entry(id, parentId, title);
+        entries.put(id, entry);
+        idsByParent.put(parentId, id);
+        for (String word : entry.words) {
+            SortedSet<Entry> wordEntries = entriesByWord.get(word);
+            if (wordEntries == null) {
+                wordEntries = Sets.newTreeSet(RANK);
+                entriesByWord.put(word, wordEntries);
+            }
+            wordEntries.add(entry);
+        }
+    }
+
+    public synchronized void remove(TaskId id) {
+        Entry old = entries.remove(id);
+        if (old == null)
+            return;
+        idsByParent.remove(old.parentId, id);
+        for (String word : old.words) {
+            SortedSet<Entry> wordEntries = entriesByWord.get(word);
+            if (wordEntries != null) {
+                wordEntries.remove(old);
+                if (wordEntries.isEmpty())
+                    entriesByWord.remove(word);
+            }
+        }
+    }
+
+    /** Remove the children of that parent that are not among those ids, e.g. when their store is loaded */
+    public synchronized void retainChildren(@Nullable TaskId parentId, Set<TaskId> ids) {
+        for (TaskId id : ImmutableList.copyOf(idsByParent.get(parentId))) {
+            if (!ids.contains(id))
+                remove(id);
+        }
+    }
+
+    /** Remove the children of that task, their children, and so on */
+    public synchronized void removeDescendants(TaskId id) {
+        for (TaskId childId : ImmutableList.copyOf(idsByParent.get(id))) {
+            removeDescendants(childId);
+            remove(childId);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * The ids of the best matching tasks, the best first. Only the tasks with the rarest query word are scored, in
+     * {@link #RANK} order; so the search can stop as soon as it has found enough tasks with the best possible score.
+     */
+    public synchronized List<TaskId> search(String query, int limit) {
+        String[] queryWords = words(query);
+        if (queryWords.length == 0 || limit <= 0)
+            return ImmutableList.of();
+        Collection<SortedSet<Entry>> candidates = null;
+        int candidateCount = Integer.MAX_VALUE;
+        int bestScore = 0;
+        for (String queryWord : queryWords) {
+            Collection<SortedSet<Entry>> wordCandidates = startingWith(queryWord).values();
+            int count = 0;
+            for (Set<Entry> wordEntries : wordCandidates) {
+                count += wordEntries.size();
+            }
+            if (count < candidateCount) {
+                candidates = wordCandidates;
+                candidateCount = count;
+            }
+            bestScore += entriesByWord.containsKey(queryWord) ? EXACT : PREFIX;
+        }
+
+        List<Iterator<Entry>> iterators = Lists.newArrayListWithCapacity(candidates.size());
+        for (Set<Entry> wordEntries : candidates) {
+            iterators.add(wordEntries.iterator());
+        }
+        Iterator<Entry> ranked = Iterators.mergeSorted(iterators, RANK);
+
+        int search = ++searches;
+        // the worst of the best hits at the head
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Collections.reverseOrder());
+        int bestHits = 0;
+        while (bestHits < limit && ranked.hasNext()) {
+            Entry entry = ranked.next();
+            if (entry.seen == search)
+                continue;
+            entry.seen = search;
+            int score = entry.score(queryWords);
+            if (score == 0)
+                continue;
+            if (score == bestScore)
+                bestHits++;
+            Hit hit = new Hit(entry, score);
+            if (best.size() < limit) {
+                best.add(hit);
+            } else if (hit.compareTo(best.peek()) < 0) {
+                best.poll();
+                best.add(hit);
+            }
+        }
+
+        TaskId[] result = new TaskId[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll().entry.id;
+        }
+        return Arrays.asList(result);
+    }
+
+    /** the words that are that word or start with it */
+    private SortedMap<String, SortedSet<Entry>> startingWith(String word) {
+        // the last character is never used in words, as it's not a letter
+        return entriesByWord.subMap(word, word + Character.MAX_VALUE);
+    }
+
+    /** Write the titles to that file; the words are indexed again when it's loaded */
+    public synchronized void save(Path file) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                writeId(out, entry.id);
+                out.writeBoolean(entry.parentId != null);
+                if (entry.parentId != null)
+                    writeId(out, entry.parentId);
+                // not writeUTF, which fails on titles of more than 64k bytes
+                byte[] title = entry.title.getBytes(Charsets.UTF_8);
+                out.writeInt(title.length);
+                out.write(title);
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("saved search index with {} titles to {}", entries.size(), file);
+    }
+}
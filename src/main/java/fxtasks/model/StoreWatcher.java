@@ -0,0 +1,150 @@
+package fxtasks.model;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.collect.*;
+
+/**
+ * Watches the directory of a store and the <code>&lt;id&gt;@</code> directories of all its child stores with one
+ * {@link WatchService}. The names of the files that changed are collected by directory, and reported in one batch
+ * once there have been no more events for the debounce delay, so a sync that writes many files is handled at once.
+ */
+@Slf4j
+class StoreWatcher implements Closeable {
+    interface Callback {
+        /** the files with these names changed in these directories; called on the watcher thread */
+        void changed(Map<Path, Set<String>> changes);
+    }
+
+    private final WatchService watchService;
+    /** guarded by <code>this</code> */
+    private final Map<WatchKey, Path> directories = Maps.newHashMap();
+    private final long debounceMillis;
+    private final Callback callback;
+    private final Thread thread;
+
+    StoreWatcher(Path root, long debounce, TimeUnit unit, Callback callback) throws IOException {
+        this.watchService = root.getFileSystem().newWatchService();
+        this.debounceMillis = unit.toMillis(debounce);
+        this.callback = callback;
+        Files.createDirectories(root);
+        registerAll(root);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "store-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** the directory and all child store directories in it */
+    private void registerAll(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private synchronized void register(Path directory) throws IOException {
+        directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+        log.debug("watch {}", directory);
+    }
+
+    private synchronized Path directory(WatchKey key) {
+        return directories.get(key);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                Map<Path, Set<String>> changes = Maps.newLinkedHashMap();
+                collect(watchService.take(), changes);
+                for (WatchKey key; (key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null;) {
+                    collect(key, changes);
+                }
+                if (!changes.isEmpty()) {
+                    try {
+                        callback.changed(changes);
+                    } catch (RuntimeException e) {
+                        log.error("can't handle changes " + changes, e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("stop watching");
+        }
+    }
+
+    private void collect(WatchKey key, Map<Path, Set<String>> changes) {
+        Path directory = directory(key);
+        if (directory == null) {
+            key.cancel();
+            return;
+        }
+        Set<String> names = changes.get(directory);
+        if (names == null) {
+            names = Sets.newHashSet();
+            changes.put(directory, names);
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                log.debug("events lost in {}; check all files", directory);
+                addAll(directory, names);
+                continue;
+            }
+            String name = event.context().toString();
+            Path changed = directory.resolve(name);
+            if (event.kind() == ENTRY_CREATE && name.endsWith("@") && Files.isDirectory(changed)) {
+                try {
+                    registerAll(changed);
+                } catch (IOException e) {
+                    log.warn("can't watch " + changed, e);
+                }
+            }
+            names.add(name);
+        }
+        if (!key.reset()) {
+            synchronized (this) {
+                directories.remove(key);
+            }
+        }
+    }
+
+    private static void addAll(Path directory, Set<String> names) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                names.add(file.getFileName().toString());
+            }
+        } catch (IOException e) {
+            log.warn("can't list " + directory, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("can't close watch service", e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package fxtasks.model;
 
+import static com.google.common.base.Preconditions.*;
 import static lombok.AccessLevel.*;
 import lombok.AllArgsConstructor;
 import lombok.experimental.*;
@@ -8,8 +9,12 @@ import lombok.experimental.*;
 @AllArgsConstructor(access = PRIVATE)
 @Accessors(fluent = true)
 public class Tag {
+    /** separates the tag ids of a task in text form, so it can't be part of an id */
+    public static final char SEPARATOR = ',';
+
     public static Tag withId(String id) {
-        return new Tag(id, null);
+        checkArgument(!id.trim().isEmpty() && id.indexOf(SEPARATOR) < 0, "invalid tag id [%s]", id);
+        return new Tag(id.trim(), null);
     }
 
     String id;
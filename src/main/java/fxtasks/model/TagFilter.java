@@ -0,0 +1,46 @@
+package fxtasks.model;
+
+import java.util.Set;
+
+import lombok.*;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * Which tasks of a store to show: all of them, those with all of some tags, or those with any of some tags; and maybe
+ * only the ones that are not done, e.g. <code>TagFilter.allOf("work").open()</code>.
+ */
+@EqualsAndHashCode
+@ToString
+public final class TagFilter {
+    public static final TagFilter ALL = new TagFilter(ImmutableSortedSet.<String> of(), false, false);
+
+    public static TagFilter allOf(String... tagIds) {
+        return new TagFilter(ImmutableSortedSet.copyOf(tagIds), false, false);
+    }
+
+    public static TagFilter anyOf(String... tagIds) {
+        return new TagFilter(ImmutableSortedSet.copyOf(tagIds), true, false);
+    }
+
+    final Set<String> tagIds;
+    /** any tag is enough, instead of all of them */
+    final boolean any;
+    final boolean openOnly;
+
+    private TagFilter(Set<String> tagIds, boolean any, boolean openOnly) {
+        this.tagIds = tagIds;
+        this.any = any;
+        this.openOnly = openOnly;
+    }
+
+    /** the tags a task must have; empty for all tasks */
+    public Set<String> tagIds() {
+        return tagIds;
+    }
+
+    /** the same tasks, but only those that are not done */
+    public TagFilter open() {
+        return new TagFilter(tagIds, any, true);
+    }
+}
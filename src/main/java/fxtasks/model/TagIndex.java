@@ -0,0 +1,110 @@
+package fxtasks.model;
+
+import java.util.*;
+
+import com.google.common.collect.*;
+
+/**
+ * A {@link Bitmap} of the tasks of a store for every tag, and one of the tasks that are done, so filters are bitmap
+ * operations instead of scans over all tasks. The bitmaps are keyed by a dense {@link LinkedTask#ordinal} that the
+ * index hands out; the ordinals of removed tasks are reused.
+ */
+class TagIndex {
+    /** by ordinal; <code>null</code> for free ordinals */
+    private final List<LinkedTask> tasks = Lists.newArrayList();
+    /** the tags the tasks are indexed with now, by ordinal */
+    private final List<Set<String>> indexedTags = Lists.newArrayList();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+
+    private final Bitmap all = new Bitmap();
+    private final Bitmap done = new Bitmap();
+    private final Map<String, Bitmap> tagged = Maps.newHashMap();
+
+    void add(LinkedTask task) {
+        if (freeOrdinals.isEmpty()) {
+            task.ordinal = tasks.size();
+            tasks.add(task);
+            indexedTags.add(ImmutableSet.<String> of());
+        } else {
+            task.ordinal = freeOrdinals.pop();
+            tasks.set(task.ordinal, task);
+        }
+        all.add(task.ordinal);
+        update(task);
+    }
+
+    /** a property of the task may have changed */
+    void update(LinkedTask task) {
+        int ordinal = task.ordinal;
+        if (task.done())
+            done.add(ordinal);
+        else
+            done.remove(ordinal);
+        Set<String> oldTags = indexedTags.get(ordinal);
+        Set<String> newTags = task.tags();
+        if (oldTags.equals(newTags))
+            return;
+        for (String tagId : Sets.difference(oldTags, newTags)) {
+            untag(tagId, ordinal);
+        }
+        for (String tagId : Sets.difference(newTags, oldTags)) {
+            Bitmap bitmap = tagged.get(tagId);
+            if (bitmap == null) {
+                bitmap = new Bitmap();
+                tagged.put(tagId, bitmap);
+            }
+            bitmap.add(ordinal);
+        }
+        indexedTags.set(ordinal, newTags);
+    }
+
+    void remove(LinkedTask task) {
+        int ordinal = task.ordinal;
+        for (String tagId : indexedTags.get(ordinal)) {
+            untag(tagId, ordinal);
+        }
+        indexedTags.set(ordinal, ImmutableSet.<String> of());
+        done.remove(ordinal);
+        all.remove(ordinal);
+        tasks.set(ordinal, null);
+        freeOrdinals.push(ordinal);
+    }
+
+    private void untag(String tagId, int ordinal) {
+        Bitmap bitmap = tagged.get(tagId);
+        bitmap.remove(ordinal);
+        if (bitmap.isEmpty())
+            tagged.remove(tagId);
+    }
+
+    /** the tags that at least one task has */
+    Set<String> tags() {
+        return ImmutableSortedSet.copyOf(tagged.keySet());
+    }
+
+    /** the tasks that match the filter, in no particular order */
+    List<LinkedTask> filter(TagFilter filter) {
+        int[] ordinals = select(filter).toArray();
+        List<LinkedTask> result = Lists.newArrayListWithCapacity(ordinals.length);
+        for (int ordinal : ordinals) {
+            result.add(tasks.get(ordinal));
+        }
+        return result;
+    }
+
+    private Bitmap select(TagFilter filter) {
+        Bitmap result = filter.tagIds.isEmpty() ? all : null;
+        for (String tagId : filter.tagIds) {
+            Bitmap bitmap = tagged.get(tagId);
+            if (bitmap == null) {
+                if (filter.any)
+                    continue;
+                return new Bitmap();
+            }
+            result = (result == null) ? bitmap : filter.any ? result.or(bitmap) : result.and(bitmap);
+        }
+        if (result == null)
+            return new Bitmap();
+        return filter.openOnly ? result.andNot(done) : result;
+    }
+}
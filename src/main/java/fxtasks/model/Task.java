@@ -1,9 +1,10 @@
 package fxtasks.model;
 
-import javafx.beans.InvalidationListener;
+import javafx.beans.*;
 import javafx.beans.property.Property;
 
-public interface Task {
+/** A task is {@link Observable}: its listeners are told about every change of its properties. */
+public interface Task extends Observable {
 
     public TaskId id();
 
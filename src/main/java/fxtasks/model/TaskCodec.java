@@ -0,0 +1,16 @@
+package fxtasks.model;
+
+import java.io.*;
+
+/**
+ * Converts a {@link LinkedTask} to and from the contents of its file. The id is the file name, so it's not part of
+ * the contents. Implementations must be thread safe, as tasks may be read in parallel.
+ * 
+ * @see XmlTaskCodec
+ * @see BinaryTaskCodec
+ */
+public interface TaskCodec {
+    public void write(LinkedTask task, OutputStream out) throws IOException;
+
+    public LinkedTask read(InputStream in) throws IOException;
+}
@@ -1,34 +1,97 @@
 package fxtasks.model;
 
+import static com.google.common.base.Charsets.*;
+
 import java.util.UUID;
 
-import lombok.Data;
-import lombok.experimental.Accessors;
+import lombok.EqualsAndHashCode;
+
+import com.google.common.collect.*;
+
+/**
+ * A 128 bit task id; its string form is a UUID, which is also the file name of the task. Ids are canonicalized, so
+ * there is only one instance for every id in memory: equal ids are usually identical, and comparing them is cheap.
+ */
+@EqualsAndHashCode
+public final class TaskId {
+    private static final Interner<TaskId> CANONICAL = Interners.newWeakInterner();
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int LENGTH = 36;
 
-@Data
-@Accessors(fluent = true)
-public class TaskId {
     public static TaskId of(String id) {
-        return new TaskId(id);
+        if (id == null || id.length() != LENGTH || id.charAt(8) != '-' || id.charAt(13) != '-'
+                || id.charAt(18) != '-' || id.charAt(23) != '-')
+            throw new IllegalArgumentException("invalid task id [" + id + "]");
+        long mostSignificantBits = parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18);
+        long leastSignificantBits = parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36);
+        return of(mostSignificantBits, leastSignificantBits);
     }
 
     public static TaskId of(byte[] bytes) {
-        return TaskId.of(new String(bytes));
+        return TaskId.of(new String(bytes, UTF_8));
+    }
+
+    public static TaskId of(long mostSignificantBits, long leastSignificantBits) {
+        return CANONICAL.intern(new TaskId(mostSignificantBits, leastSignificantBits));
     }
 
     public static TaskId random() {
-        return TaskId.of(UUID.randomUUID().toString());
+        UUID uuid = UUID.randomUUID();
+        return of(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
     }
 
-    final String id;
+    private static long parseHex(String id, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(id.charAt(i), 16);
+            if (digit < 0)
+                throw new IllegalArgumentException("invalid task id [" + id + "]");
+            value = value << 4 | digit;
+        }
+        return value;
+    }
 
-    private TaskId(String id) {
-        if (id == null || id.length() == 0)
-            throw new IllegalArgumentException("invalid task id [" + id + "]");
-        this.id = id;
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+    private TaskId(long mostSignificantBits, long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+    }
+
+    long mostSignificantBits() {
+        return mostSignificantBits;
+    }
+
+    long leastSignificantBits() {
+        return leastSignificantBits;
     }
 
+    /** the UUID form, e.g. <code>a82b57fb-10c5-4fcf-a3ea-fb01d9928ee7</code> */
     public String asString() {
-        return id;
+        char[] chars = new char[LENGTH];
+        formatHex(chars, 0, mostSignificantBits >>> 32, 8);
+        chars[8] = '-';
+        formatHex(chars, 9, mostSignificantBits >>> 16, 4);
+        chars[13] = '-';
+        formatHex(chars, 14, mostSignificantBits, 4);
+        chars[18] = '-';
+        formatHex(chars, 19, leastSignificantBits >>> 48, 4);
+        chars[23] = '-';
+        formatHex(chars, 24, leastSignificantBits, 12);
+        return new String(chars);
+    }
+
+    private static void formatHex(char[] chars, int start, long value, int digits) {
+        for (int i = start + digits - 1; i >= start; i--) {
+            chars[i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return asString();
     }
 }
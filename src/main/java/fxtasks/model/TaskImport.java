@@ -0,0 +1,75 @@
+package fxtasks.model;
+
+import static com.google.common.base.Charsets.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+
+import fxtasks.model.FileBasedTaskStore.LoadMode;
+
+/**
+ * Imports a task list from a text file into a store, without the UI, e.g. to seed a big store:
+ *
+ * <pre>
+ * java fxtasks.model.TaskImport tasks.txt [store directory]
+ * </pre>
+ *
+ * One task per line: the title, optionally followed by a tab and the ids of its tags, separated by commas. Empty lines
+ * are skipped. The tasks are added at the end of the store; the file is streamed, not read at once.
+ */
+@Slf4j
+public class TaskImport {
+    private static final Splitter TAB = Splitter.on('\t').limit(2);
+    private static final Splitter TAGS = Splitter.on(Tag.SEPARATOR).trimResults().omitEmptyStrings();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: TaskImport <task list> [<store directory>]");
+            System.exit(2);
+        }
+        FileBasedTaskStore store = (args.length > 1) ? new FileBasedTaskStore(Paths.get(args[1]))
+                : new FileBasedTaskStore();
+        store.loadMode(LoadMode.PARALLEL).load();
+        Stopwatch stopwatch = new Stopwatch().start();
+        int count;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), UTF_8)) {
+            count = store.importAll(read(reader));
+        } finally {
+            store.close();
+        }
+        log.info("imported {} tasks in {} ms", count, stopwatch.elapsedTime(TimeUnit.MILLISECONDS));
+    }
+
+    /** the tasks of the list, read as they are needed */
+    static Iterator<LinkedTask> read(final BufferedReader reader) {
+        return new AbstractIterator<LinkedTask>() {
+            @Override
+            protected LinkedTask computeNext() {
+                try {
+                    for (String line; (line = reader.readLine()) != null;) {
+                        if (!line.trim().isEmpty())
+                            return parse(line);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    static LinkedTask parse(String line) {
+        Iterator<String> parts = TAB.split(line).iterator();
+        LinkedTask task = new LinkedTask().title(parts.next().trim());
+        if (parts.hasNext())
+            task.tags(ImmutableSet.copyOf(TAGS.split(parts.next())));
+        return task;
+    }
+}
@@ -0,0 +1,228 @@
+package fxtasks.model;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.*;
+
+import javafx.beans.InvalidationListener;
+import javafx.collections.*;
+
+import com.google.common.collect.*;
+
+/**
+ * The observable list of the tasks of a store. Unlike an observable array list, it can {@link #move(int, int) move}
+ * one task with a permutation of only the range it moves across, instead of sorting, and reporting, the whole list.
+ * Every other change is reported as one added or removed range.
+ */
+class TaskList extends AbstractList<LinkedTask> implements ObservableList<LinkedTask> {
+    /** one added, removed or permutated range */
+    private class RangeChange extends ListChangeListener.Change<LinkedTask> {
+        private final int from;
+        private final int to;
+        private final List<LinkedTask> removed;
+        private final int[] permutation;
+        private boolean onChange = false;
+
+        RangeChange(int from, int to, List<LinkedTask> removed, int[] permutation) {
+            super(TaskList.this);
+            this.from = from;
+            this.to = to;
+            this.removed = removed;
+            this.permutation = permutation;
+        }
+
+        @Override
+        public boolean next() {
+            if (onChange)
+                return false;
+            onChange = true;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            onChange = false;
+        }
+
+        @Override
+        public int getFrom() {
+            return from;
+        }
+
+        @Override
+        public int getTo() {
+            return to;
+        }
+
+        @Override
+        public List<LinkedTask> getRemoved() {
+            return removed;
+        }
+
+        @Override
+        protected int[] getPermutation() {
+            return permutation;
+        }
+    }
+
+    private static final int[] NO_PERMUTATION = new int[0];
+
+    private final List<LinkedTask> tasks = Lists.newArrayList();
+
+    private final List<ListChangeListener<? super LinkedTask>> listChangeListeners = Lists.newArrayList();
+    private final List<InvalidationListener> invalidationListeners = Lists.newArrayList();
+
+    @Override
+    public LinkedTask get(int index) {
+        return tasks.get(index);
+    }
+
+    @Override
+    public int size() {
+        return tasks.size();
+    }
+
+    @Override
+    public void add(int index, LinkedTask task) {
+        tasks.add(index, task);
+        fire(new RangeChange(index, index + 1, ImmutableList.<LinkedTask> of(), NO_PERMUTATION));
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends LinkedTask> added) {
+        return addAll(tasks.size(), added);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends LinkedTask> added) {
+        checkPositionIndex(index, tasks.size());
+        if (added.isEmpty())
+            return false;
+        tasks.addAll(index, added);
+        fire(new RangeChange(index, index + added.size(), ImmutableList.<LinkedTask> of(), NO_PERMUTATION));
+        return true;
+    }
+
+    @Override
+    public LinkedTask set(int index, LinkedTask task) {
+        LinkedTask replaced = tasks.set(index, task);
+        fire(new RangeChange(index, index + 1, ImmutableList.of(replaced), NO_PERMUTATION));
+        return replaced;
+    }
+
+    @Override
+    public LinkedTask remove(int index) {
+        LinkedTask removed = tasks.remove(index);
+        fire(new RangeChange(index, index, ImmutableList.of(removed), NO_PERMUTATION));
+        return removed;
+    }
+
+    @Override
+    protected void removeRange(int from, int to) {
+        remove(from, to);
+    }
+
+    @Override
+    public void remove(int from, int to) {
+        checkPositionIndexes(from, to, tasks.size());
+        if (from == to)
+            return;
+        List<LinkedTask> range = tasks.subList(from, to);
+        List<LinkedTask> removed = ImmutableList.copyOf(range);
+        range.clear();
+        fire(new RangeChange(from, from, removed, NO_PERMUTATION));
+    }
+
+    /**
+     * Move the task at that index to the other one; only the tasks in between shift by one, and the permutation
+     * reports only their range.
+     */
+    public void move(int from, int to) {
+        checkElementIndex(from, tasks.size());
+        checkElementIndex(to, tasks.size());
+        if (from == to)
+            return;
+        int low = Math.min(from, to);
+        int high = Math.max(from, to) + 1;
+        Collections.rotate(tasks.subList(low, high), (from < to) ? -1 : 1);
+        int[] permutation = new int[high - low];
+        for (int i = low; i < high; i++) {
+            permutation[i - low] = (i == from) ? to : (from < to) ? i - 1 : i + 1;
+        }
+        fire(new RangeChange(low, high, ImmutableList.<LinkedTask> of(), permutation));
+    }
+
+    @Override
+    public boolean addAll(LinkedTask... added) {
+        return addAll(Arrays.asList(added));
+    }
+
+    @Override
+    public boolean setAll(LinkedTask... replacing) {
+        return setAll(Arrays.asList(replacing));
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends LinkedTask> replacing) {
+        List<LinkedTask> removed = ImmutableList.copyOf(tasks);
+        tasks.clear();
+        tasks.addAll(replacing);
+        fire(new RangeChange(0, tasks.size(), removed, NO_PERMUTATION));
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(LinkedTask... removed) {
+        return removeAll(Arrays.asList(removed));
+    }
+
+    @Override
+    public boolean retainAll(LinkedTask... retained) {
+        return retainAll(Arrays.asList(retained));
+    }
+
+    @Override
+    public void addListener(ListChangeListener<? super LinkedTask> listener) {
+        listChangeListeners.add(checkNotNull(listener));
+    }
+
+    @Override
+    public void removeListener(ListChangeListener<? super LinkedTask> listener) {
+        listChangeListeners.remove(listener);
+    }
+
+    @Override
+    public void addListener(InvalidationListener listener) {
+        invalidationListeners.add(checkNotNull(listener));
+    }
+
+    @Override
+    public void removeListener(InvalidationListener listener) {
+        invalidationListeners.remove(listener);
+    }
+
+    /** like the observable lists of JavaFX, a failing listener doesn't keep the others from the change */
+    private void fire(RangeChange change) {
+        modCount++;
+        for (InvalidationListener listener : ImmutableList.copyOf(invalidationListeners)) {
+            try {
+                listener.invalidated(this);
+            } catch (RuntimeException e) {
+                uncaught(e);
+            }
+        }
+        for (ListChangeListener<? super LinkedTask> listener : ImmutableList.copyOf(listChangeListeners)) {
+            change.reset();
+            try {
+                listener.onChanged(change);
+            } catch (RuntimeException e) {
+                uncaught(e);
+            }
+        }
+    }
+
+    private static void uncaught(RuntimeException e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+}
@@ -1,12 +1,50 @@
 package fxtasks.model;
 
-import javafx.collections.ListChangeListener;
+import java.util.*;
+
+import javafx.collections.*;
+
+import com.google.common.base.*;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public interface TaskStore {
     public Task create();
 
+    /**
+     * Create tasks with the property values of those at the end, in their order. Each task is written once, and the
+     * listeners see one change for all of them.
+     */
+    public List<? extends Task> createAll(Iterable<? extends Task> values);
+
+    /**
+     * Like {@link #createAll(Iterable)}, for more tasks than should be held twice: they're created in batches as the
+     * iterator delivers them, e.g. while it reads them from a file.
+     * 
+     * @return the number of tasks created
+     */
+    public int importAll(Iterator<? extends Task> values);
+
+    /** Hears how work in the background proceeds; it's called on the thread that does it */
+    public interface Progress {
+        public static final Progress NONE = new Progress() {
+            @Override
+            public void worked(int done) {}
+        };
+
+        /** another unit of work is done, e.g. a file, so <code>done</code> are done in total */
+        public void worked(int done);
+    }
+
+    /** Remove the task with all of its children; see {@link #remove(Task, Progress)} */
     public void remove(Task task);
 
+    /**
+     * Remove the task at once, and delete its children in the background, however deep their tree is.
+     * 
+     * @return the number of files and directories deleted; it fails if the children can't be deleted
+     */
+    public ListenableFuture<Integer> remove(Task task, Progress progress);
+
     public void addListener(ListChangeListener<Task> listener);
 
     public void load();
@@ -17,11 +55,48 @@ public interface TaskStore {
 
     public void moveDown(Task task);
 
+    /**
+     * Move the task to that index, in one permutation of the list; only the links that change are written, at most
+     * three files
+     */
+    public void moveTo(Task task, int index);
+
+    /** Move the task right after that one, or to the top, if it's <code>null</code>; see {@link #moveTo(Task, int)} */
+    public void moveAfter(Task task, Task previous);
+
+    /** Make the task the last child of the task before it, with all of its children */
     public void moveIn(Task task);
 
+    /** Make the task of a child store the next sibling of its parent, with all of its children */
     public void moveOut(Task task);
 
     public Task createChildOf(Task parent);
 
     public void removeChildOf(Task parent, Task child);
+
+    /** The store with the children of that task; it's loaded on the calling thread, if it isn't in memory */
+    public TaskStore childrenOf(Task parent);
+
+    /** Load the store with the children of that task in the background */
+    public ListenableFuture<TaskStore> loadChildrenOf(Task parent);
+
+    /** The ids of the tags that the tasks in this store have */
+    public Set<String> tags();
+
+    /** The tasks in this store that match the filter, in their order */
+    public List<Task> filter(TagFilter filter);
+
+    /**
+     * A read only list of the tasks that match the filter, in the order of the store; it follows every change of the
+     * tasks and of their order. See {@link TaskViews} for common filters.
+     */
+    public ObservableList<Task> view(Predicate<? super Task> filter);
+
+    /** Like {@link #view(Predicate)}, but sorted by the key; tasks with equal keys are in no particular order */
+    public <K extends Comparable<? super K>> ObservableList<Task> view(Predicate<? super Task> filter,
+            Function<? super Task, K> sortKey);
+
+    public void flush();
+
+    public void close();
 }
@@ -0,0 +1,30 @@
+package fxtasks.model;
+
+import java.util.Locale;
+
+import com.google.common.base.*;
+
+/** Filters and sort keys for the {@link TaskStore#view(Predicate) live views} of a store */
+public final class TaskViews {
+    public static final Predicate<Task> ALL = Predicates.alwaysTrue();
+
+    public static final Predicate<Task> OPEN = new Predicate<Task>() {
+        @Override
+        public boolean apply(Task task) {
+            return !((LinkedTask) task).done();
+        }
+    };
+
+    public static final Predicate<Task> DONE = Predicates.not(OPEN);
+
+    /** case insensitive; tasks without title first */
+    public static final Function<Task, String> BY_TITLE = new Function<Task, String>() {
+        @Override
+        public String apply(Task task) {
+            String title = ((LinkedTask) task).title();
+            return (title == null) ? null : title.toLowerCase(Locale.ROOT);
+        }
+    };
+
+    private TaskViews() {}
+}
@@ -0,0 +1,157 @@
+package fxtasks.model;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import javax.annotation.Nullable;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.collect.*;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Collects writes and runs them in the background, on one writer thread. A write is scheduled for a key, e.g. a task;
+ * all writes for the same key within the delay collapse into the last one. The first write after a flush starts the
+ * delay. Everything still pending is flushed when the JVM shuts down, and made durable, if the writes
+ * {@link #commitsTo(GroupCommitter) commit transactions}.
+ */
+@Slf4j
+class WriteBehindQueue {
+    private final long delay;
+    private final TimeUnit unit;
+
+    /** guarded by <code>this</code> */
+    private final Map<Object, Runnable> pending = Maps.newLinkedHashMap();
+    /** guarded by <code>this</code> */
+    private boolean scheduled = false;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("write-behind").setDaemon(true).build());
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /** where the writes commit their transactions, if they do; the shutdown hook waits for them to be durable */
+    @Nullable
+    private volatile GroupCommitter committer;
+
+    private final Thread shutdownHook = new Thread("write-behind-shutdown") {
+        @Override
+        public void run() {
+            flushDurably();
+        }
+    };
+
+    public WriteBehindQueue(long delay, TimeUnit unit) {
+        checkArgument(delay >= 0, "delay must not be negative");
+        this.delay = delay;
+        this.unit = checkNotNull(unit);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /** The writes hand their transactions to that committer, so the queue is only flushed when it has committed them */
+    void commitsTo(GroupCommitter committer) {
+        this.committer = checkNotNull(committer);
+    }
+
+    /** Run this write later, instead of any write for the same key that is still pending. */
+    public synchronized void schedule(Object key, Runnable write) {
+        checkState(!executor.isShutdown(), "write-behind queue is closed");
+        pending.put(key, write);
+        if (!scheduled) {
+            scheduled = true;
+            executor.schedule(drain, delay, unit);
+        }
+    }
+
+    /** Drop the pending write for that key, if there is one; a write that is running already isn't stopped. */
+    public synchronized void cancel(Object key) {
+        pending.remove(key);
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private void drain() {
+        List<Runnable> writes;
+        synchronized (this) {
+            writes = ImmutableList.copyOf(pending.values());
+            pending.clear();
+            scheduled = false;
+        }
+        for (Runnable write : writes) {
+            try {
+                write.run();
+            } catch (RuntimeException e) {
+                log.error("write behind failed", e);
+            }
+        }
+    }
+
+    /** Run all pending writes now and wait for them to finish. */
+    public void flush() {
+        if (executor.isShutdown())
+            return;
+        try {
+            executor.submit(drain).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while flushing", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("flush failed", e.getCause());
+        }
+    }
+
+    /**
+     * Run the pending writes for the keys that apply now, on the calling thread, e.g. before their files are read
+     * again; so it doesn't wait for the writer thread, which may wait for a transaction of the caller. A write that is
+     * running already isn't waited for.
+     */
+    public void flush(Predicate<Object> keys) {
+        List<Runnable> writes = Lists.newArrayList();
+        synchronized (this) {
+            for (Iterator<Map.Entry<Object, Runnable>> i = pending.entrySet().iterator(); i.hasNext();) {
+                Map.Entry<Object, Runnable> entry = i.next();
+                if (keys.apply(entry.getKey())) {
+                    writes.add(entry.getValue());
+                    i.remove();
+                }
+            }
+        }
+        for (Runnable write : writes) {
+            write.run();
+        }
+    }
+
+    /** Flush, and wait until the committer, if there is one, has made the writes durable; when the JVM shuts down */
+    @VisibleForTesting
+    void flushDurably() {
+        flush();
+        GroupCommitter writesCommitter = committer;
+        if (writesCommitter != null)
+            writesCommitter.flush();
+    }
+
+    /** Flush and stop the writer thread; no more writes can be scheduled. */
+    public void close() {
+        flush();
+        executor.shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // we are already shutting down
+        }
+    }
+}
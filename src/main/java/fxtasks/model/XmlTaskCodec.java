@@ -0,0 +1,88 @@
+package fxtasks.model;
+
+import static com.google.common.base.Charsets.*;
+import static javax.xml.stream.XMLStreamConstants.*;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams tasks as XML, in the format that JAXB used to write, e.g.:
+ * 
+ * <pre>
+ * &lt;linkedTask nextId="...">
+ *     &lt;done>false&lt;/done>
+ *     &lt;title>...&lt;/title>
+ * &lt;/linkedTask>
+ * </pre>
+ * 
+ * Every property is an element with its name; <code>null</code> values are left out. Unknown elements are ignored.
+ */
+@Slf4j
+public class XmlTaskCodec implements TaskCodec {
+    private static final String ROOT = "linkedTask";
+    private static final String NEXT_ID = "nextId";
+    private static final byte[] DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            .getBytes(UTF_8);
+
+    private final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    @Override
+    public void write(LinkedTask task, OutputStream out) throws IOException {
+        out.write(DECLARATION);
+        try {
+            XMLStreamWriter xml = outputFactory.createXMLStreamWriter(out, UTF_8.name());
+            xml.writeStartElement(ROOT);
+            if (task.nextId != null)
+                xml.writeAttribute(NEXT_ID, task.nextId.asString());
+            for (String name : task.propertyNames()) {
+                String text = task.propertyType(name).format(task.value(name));
+                if (text == null)
+                    continue;
+                xml.writeCharacters("\n    ");
+                xml.writeStartElement(name);
+                xml.writeCharacters(text);
+                xml.writeEndElement();
+            }
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("can't write task " + task.id(), e);
+        }
+    }
+
+    @Override
+    public LinkedTask read(InputStream in) throws IOException {
+        try {
+            XMLStreamReader xml = inputFactory.createXMLStreamReader(in);
+            try {
+                xml.nextTag();
+                xml.require(START_ELEMENT, null, ROOT);
+                LinkedTask task = new LinkedTask();
+                String nextId = xml.getAttributeValue(null, NEXT_ID);
+                if (nextId != null)
+                    task.nextId = TaskId.of(nextId);
+                while (xml.nextTag() == START_ELEMENT) {
+                    String name = xml.getLocalName();
+                    String text = xml.getElementText();
+                    if (task.propertyNames().contains(name)) {
+                        task.value(name, task.propertyType(name).parse(text));
+                    } else {
+                        log.debug("ignore unknown property {}", name);
+                    }
+                }
+                return task;
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("can't read task", e);
+        }
+    }
+}
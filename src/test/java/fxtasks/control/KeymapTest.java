@@ -0,0 +1,61 @@
+package fxtasks.control;
+
+import static fxtasks.control.KeyModifier.*;
+import static fxtasks.control.TaskPaneController.Action.*;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+
+import javafx.scene.input.*;
+
+import org.junit.Test;
+
+public class KeymapTest {
+    private Keymap load(String keymap) throws Exception {
+        return Keymap.load(new StringReader(keymap));
+    }
+
+    @Test
+    public void shouldBindDefaultKeys() throws Exception {
+        assertEquals(FOCUS_PREVIOUS, Keymap.DEFAULT.get(KeyCode.UP, 0));
+        assertEquals(FOCUS_NEXT, Keymap.DEFAULT.get(KeyCode.DOWN, SHIFT.bit()));
+        assertEquals(MOVE_UP, Keymap.DEFAULT.get(KeyCode.UP, ALT.bit()));
+        assertNull(Keymap.DEFAULT.get(KeyCode.UP, ALT.bit() | SHIFT.bit()));
+        assertNull(Keymap.DEFAULT.get(KeyCode.A, 0));
+    }
+
+    @Test
+    public void shouldOverrideDefaults() throws Exception {
+        Keymap keymap = load("# vi style\nK = FOCUS_PREVIOUS\nCONTROL+K = MOVE_UP\nALT+UP =\n");
+
+        assertEquals(FOCUS_PREVIOUS, keymap.get(KeyCode.K, 0));
+        assertEquals(MOVE_UP, keymap.get(KeyCode.K, CONTROL.bit()));
+        assertNull(keymap.get(KeyCode.UP, ALT.bit()));
+        assertEquals(FOCUS_PREVIOUS, keymap.get(KeyCode.UP, 0));
+        assertEquals(MOVE_UP, Keymap.DEFAULT.get(KeyCode.UP, ALT.bit()));
+    }
+
+    private static KeyEvent pressed(KeyCode code, boolean controlDown, boolean metaDown) {
+        return new KeyEvent(KeyEvent.KEY_PRESSED, "", "", code, false, controlDown, false, metaDown);
+    }
+
+    @Test
+    public void shouldDispatchEventsWithControlAndShortcut() throws Exception {
+        Keymap keymap = load("CONTROL+K = MOVE_UP\nSHORTCUT+J = MOVE_DOWN\n");
+        boolean mac = SHORTCUT.platform() == META;
+
+        assertEquals(MOVE_UP, keymap.get(pressed(KeyCode.K, true, false)));
+        assertEquals(MOVE_DOWN, keymap.get(pressed(KeyCode.J, !mac, mac)));
+        assertNull(keymap.get(pressed(KeyCode.J, mac, !mac)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownKey() throws Exception {
+        load("ALT+NOKEY = MOVE_UP");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownAction() throws Exception {
+        load("UP = JUMP");
+    }
+}
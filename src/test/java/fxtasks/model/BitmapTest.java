@@ -0,0 +1,76 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import com.google.common.collect.*;
+import com.google.common.primitives.Ints;
+
+public class BitmapTest {
+    private final Random random = new Random(42);
+
+    /** random values in a few chunks, some sparse and some dense */
+    private SortedSet<Integer> randomValues() {
+        SortedSet<Integer> values = Sets.newTreeSet();
+        for (int chunk = 0; chunk < 4; chunk++) {
+            int count = random.nextBoolean() ? random.nextInt(100) : Bitmap.ARRAY_MAX + random.nextInt(20000);
+            for (int i = 0; i < count; i++) {
+                values.add(chunk * 65536 + random.nextInt(65536));
+            }
+        }
+        return values;
+    }
+
+    private Bitmap bitmap(Set<Integer> values) {
+        return Bitmap.of(Ints.toArray(values));
+    }
+
+    private void assertValues(Set<Integer> expected, Bitmap actual) {
+        assertEquals(ImmutableList.copyOf(ImmutableSortedSet.copyOf(expected)), Ints.asList(actual.toArray()));
+        assertEquals(expected.size(), actual.cardinality());
+    }
+
+    @Test
+    public void shouldAddAndRemove() throws Exception {
+        SortedSet<Integer> values = randomValues();
+        Bitmap bitmap = bitmap(values);
+        assertValues(values, bitmap);
+
+        for (Integer value : ImmutableList.copyOf(values)) {
+            if (random.nextInt(4) > 0) {
+                values.remove(value);
+                bitmap.remove(value);
+            }
+        }
+        assertValues(values, bitmap);
+        assertTrue(bitmap.contains(values.first()));
+        assertFalse(bitmap.contains(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldCombine() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            SortedSet<Integer> left = randomValues();
+            SortedSet<Integer> right = randomValues();
+
+            assertValues(Sets.intersection(left, right), bitmap(left).and(bitmap(right)));
+            assertValues(Sets.union(left, right), bitmap(left).or(bitmap(right)));
+            assertValues(Sets.difference(left, right), bitmap(left).andNot(bitmap(right)));
+        }
+    }
+
+    @Test
+    public void shouldNotChangeOperands() throws Exception {
+        Bitmap left = Bitmap.of(1, 2, 70000);
+        Bitmap right = Bitmap.of(2, 3);
+
+        left.or(right).add(4);
+        left.andNot(right).add(5);
+
+        assertValues(ImmutableSet.of(1, 2, 70000), left);
+        assertValues(ImmutableSet.of(2, 3), right);
+    }
+}
@@ -2,13 +2,19 @@ package fxtasks.model;
 
 import static org.junit.Assert.*;
 
-import java.nio.file.Path;
-import java.util.List;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
-import org.junit.Test;
+import javafx.collections.ListChangeListener;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
 
 import com.google.common.collect.*;
 
+import fxtasks.model.FileBasedTaskStore.LoadMode;
+
 public class FileBasedTaskStoreTest {
 
     // TODO this is getting ugly... use real IO instead (or maybe mock the FileSystem?)
@@ -43,6 +49,9 @@ public class FileBasedTaskStoreTest {
             return new TestFileBasedTaskStore(childPath);
         }
 
+        @Override
+        public void load() {}
+
         @Override
         void deleteTaskFile(Task task) {
             deleted.add((LinkedTask) task);
@@ -77,6 +86,34 @@ public class FileBasedTaskStoreTest {
         assertTrue(firstRemoved);
     }
 
+    @Test
+    public void shouldRelinkPreviousOnRemove() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        LinkedTask three = store.create().title("three");
+        resetSaved();
+
+        store.remove(two);
+
+        assertSaved(one);
+        assertFalse(firstSaved);
+        assertEquals(three.id(), one.nextId());
+        assertEquals(ImmutableList.of(two), deleted);
+    }
+
+    @Test
+    public void shouldSaveFirstOnRemoveOfFirst() throws Exception {
+        LinkedTask one = store.create().title("one");
+        store.create().title("two");
+        resetSaved();
+
+        store.remove(one);
+
+        assertSaved();
+        assertTrue(firstSaved);
+        assertFalse(firstRemoved);
+    }
+
     @Test
     public void shouldCreate4() throws Exception {
         Task one = store.create().title("one");
@@ -173,6 +210,82 @@ public class FileBasedTaskStoreTest {
         assertFalse(firstSaved);
     }
 
+    @Test
+    public void shouldMoveToWithOnePermutation() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        LinkedTask three = store.create().title("three");
+        LinkedTask four = store.create().title("four");
+        LinkedTask five = store.create().title("five");
+        resetSaved();
+        final List<String> permutations = Lists.newArrayList();
+        store.addListener(new ListChangeListener<Task>() {
+            @Override
+            public void onChanged(Change<? extends Task> change) {
+                while (change.next()) {
+                    permutations.add(change.wasPermutated() + " [" + change.getFrom() + " to " + change.getTo() + ")");
+                }
+            }
+        });
+
+        store.moveTo(two, 3);
+
+        // only the range the task has moved across
+        assertEquals(ImmutableList.of("true [1 to 4)"), permutations);
+        assertFalse(firstSaved);
+        assertSaved(one, four, two);
+        assertEquals(ImmutableList.of(one, three, four, two, five), store.taskList);
+        assertEquals(three, one.next());
+        assertEquals(two, four.next());
+        assertEquals(five, two.next());
+
+        store.moveTo(five, 1);
+
+        assertEquals(ImmutableList.of(one, five, three, four, two), store.taskList);
+        assertEquals(null, two.next());
+        for (int i = 0; i < store.taskList.size(); i++) {
+            assertEquals(i, store.indexOf(store.taskList.get(i)));
+        }
+    }
+
+    @Test
+    public void shouldMoveToFirstAndLast() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        LinkedTask three = store.create().title("three");
+        resetSaved();
+
+        store.moveTo(three, 0);
+
+        assertTrue(firstSaved);
+        assertSaved(two, three);
+        assertEquals(ImmutableList.of(three, one, two), store.taskList);
+
+        resetSaved();
+        store.moveTo(three, 2);
+
+        assertTrue(firstSaved);
+        assertSaved(two, three);
+        assertEquals(ImmutableList.of(one, two, three), store.taskList);
+        assertEquals(null, three.next());
+    }
+
+    @Test
+    public void shouldMoveAfter() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        LinkedTask three = store.create().title("three");
+
+        store.moveAfter(one, three);
+        assertEquals(ImmutableList.of(two, three, one), store.taskList);
+
+        store.moveAfter(one, two);
+        assertEquals(ImmutableList.of(two, one, three), store.taskList);
+
+        store.moveAfter(three, null);
+        assertEquals(ImmutableList.of(three, two, one), store.taskList);
+    }
+
     @Test
     public void shouldMoveUp() throws Exception {
         LinkedTask one = store.create().title("one");
@@ -253,7 +366,7 @@ public class FileBasedTaskStoreTest {
 
         assertEquals(ImmutableList.of(sub1), saved);
         assertEquals(ImmutableList.of(one), store.taskList);
-        assertEquals(ImmutableList.of(sub1), ((FileBasedTaskStore) store.childStores.get(one.id())).taskList);
+        assertEquals(ImmutableList.of(sub1), ((FileBasedTaskStore) store.childrenOf(one)).taskList);
     }
 
     @Test
@@ -267,6 +380,664 @@ public class FileBasedTaskStoreTest {
 
         assertEquals(0, saved.size());
         assertEquals(ImmutableList.of(one), store.taskList);
-        assertEquals(ImmutableList.of(), ((FileBasedTaskStore) store.childStores.get(one.id())).taskList);
+        assertEquals(ImmutableList.of(), ((FileBasedTaskStore) store.childrenOf(one)).taskList);
+    }
+
+    private void assertIndexConsistent(FileBasedTaskStore taskStore) {
+        assertEquals(taskStore.taskList.size(), taskStore.taskIndex.size());
+        for (LinkedTask task : taskStore.taskList) {
+            assertSame(task, taskStore.getById(task.id()));
+        }
+    }
+
+    @Test
+    public void shouldIndexCreated() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+
+        assertIndexConsistent(store);
+        assertSame(two, one.next());
+    }
+
+    @Test
+    public void shouldUnindexRemoved() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+
+        store.remove(one);
+
+        assertIndexConsistent(store);
+        assertSame(two, store.getById(two.id()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToGetRemovedById() throws Exception {
+        LinkedTask one = store.create().title("one");
+        store.create().title("two");
+        store.remove(one);
+
+        store.getById(one.id());
+    }
+
+    @Test
+    public void shouldKeepIndexOnMoveUpAndDown() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        LinkedTask three = store.create().title("three");
+
+        store.moveUp(three);
+        assertIndexConsistent(store);
+        store.moveDown(one);
+        assertIndexConsistent(store);
+
+        assertEquals(ImmutableList.of(three, one, two), store.taskList);
+        assertSame(one, three.next());
+        assertSame(two, one.next());
+    }
+
+    @Test
+    public void shouldIndexSubtasksInChildStore() throws Exception {
+        LinkedTask one = store.create().title("one");
+        Task sub1 = store.createChildOf(one);
+
+        FileBasedTaskStore childStore = (FileBasedTaskStore) store.childrenOf(one);
+        assertIndexConsistent(store);
+        assertIndexConsistent(childStore);
+        assertSame(sub1, childStore.getById(sub1.id()));
+    }
+
+    private void assertPositionsConsistent(FileBasedTaskStore taskStore) {
+        for (int i = 0; i < taskStore.taskList.size(); i++) {
+            assertEquals(i, taskStore.indexOf(taskStore.taskList.get(i)));
+        }
+    }
+
+    @Test
+    public void shouldKeepPositionsOnMoves() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        LinkedTask three = store.create().title("three");
+        LinkedTask four = store.create().title("four");
+
+        store.moveDown(one);
+        store.moveDown(one);
+        store.moveUp(four);
+        store.moveDown(two);
+
+        assertEquals(ImmutableList.of(three, two, four, one), store.taskList);
+        assertPositionsConsistent(store);
+    }
+
+    @Test
+    public void shouldRenumberPositionsAfterRemove() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        LinkedTask three = store.create().title("three");
+        LinkedTask four = store.create().title("four");
+
+        store.remove(two);
+        store.moveUp(four);
+
+        assertEquals(ImmutableList.of(one, four, three), store.taskList);
+        assertPositionsConsistent(store);
+        assertEquals(2, store.indexOf(three));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailToMoveRemovedTask() throws Exception {
+        store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        store.remove(two);
+
+        store.moveUp(two);
+    }
+
+    @Test
+    public void shouldFireRemoveAndAddOnMove() throws Exception {
+        store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        store.create().title("three");
+        final List<String> changes = Lists.newArrayList();
+        store.addListener(new ListChangeListener<Task>() {
+            @Override
+            public void onChanged(Change<? extends Task> change) {
+                while (change.next()) {
+                    if (change.wasRemoved())
+                        changes.add("remove " + change.getRemoved() + " at " + change.getFrom());
+                    if (change.wasAdded())
+                        changes.add("add " + change.getAddedSubList() + " at " + change.getFrom());
+                }
+            }
+        });
+
+        store.moveDown(two);
+
+        assertEquals(ImmutableList.of("remove [" + two + "] at 1", "add [" + two + "] at 2"), changes);
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<String> titlesLoadedFrom(Path path, LoadMode loadMode) {
+        return titlesLoadedFrom(new FileBasedTaskStore(path).loadMode(loadMode));
+    }
+
+    private List<String> titlesLoadedFrom(FileBasedTaskStore loaded) {
+        loaded.load();
+        assertIndexConsistent(loaded);
+        List<String> titles = Lists.newArrayList();
+        for (LinkedTask task : loaded.taskList) {
+            titles.add(task.title());
+        }
+        return titles;
+    }
+
+    @Test
+    public void shouldLoadSeriallyAndInParallel() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        written.create().title("one");
+        LinkedTask two = written.create().title("two");
+        written.create().title("three");
+        written.createChildOf(two).<String> getProperty("title").setValue("sub");
+        written.moveUp(two);
+
+        List<String> expected = ImmutableList.of("two", "one", "three");
+        assertEquals(expected, titlesLoadedFrom(path, LoadMode.SERIAL));
+        assertEquals(expected, titlesLoadedFrom(path, LoadMode.PARALLEL));
+    }
+
+    @Test
+    public void shouldLoadAfterRemoveOfFirstMiddleAndLast() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        LinkedTask one = written.create().title("one");
+        written.create().title("two");
+        LinkedTask three = written.create().title("three");
+        written.create().title("four");
+        LinkedTask five = written.create().title("five");
+
+        written.remove(one);
+        written.remove(three);
+        written.remove(five);
+
+        List<String> expected = ImmutableList.of("two", "four");
+        assertEquals(expected, titlesLoadedFrom(path, LoadMode.SERIAL));
+        assertEquals(expected, titlesLoadedFrom(path, LoadMode.PARALLEL));
+    }
+
+    @Test
+    public void shouldRepairChainBrokenByACrash() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        LinkedTask one = written.create().title("one");
+        LinkedTask two = written.create().title("two");
+        written.create().title("three");
+        LinkedTask four = written.create().title("four");
+        // deleted, but the links to them were never saved
+        Files.delete(path.resolve(one.id().asString()));
+        Files.delete(path.resolve(four.id().asString()));
+
+        List<String> expected = ImmutableList.of("two", "three");
+        assertEquals(expected, titlesLoadedFrom(path, LoadMode.SERIAL));
+        assertEquals(two.id(), TaskId.of(Files.readAllBytes(path.resolve(".first"))));
+        Files.delete(path.resolve(".first"));
+        assertEquals(expected, titlesLoadedFrom(path, LoadMode.PARALLEL));
+        assertEquals(two.id(), TaskId.of(Files.readAllBytes(path.resolve(".first"))));
+    }
+
+    @Test
+    public void shouldRemoveChildrenInTheBackground() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        LinkedTask one = written.create().title("one");
+        written.create().title("two");
+        Task sub = written.createChildOf(one);
+        sub.<String> getProperty("title").setValue("sub");
+        written.childrenOf(one).createChildOf(sub).<String> getProperty("title").setValue("subsub");
+        final List<Integer> progress = Lists.newArrayList();
+
+        int deleted = written.remove(one, new TaskStore.Progress() {
+            @Override
+            public void worked(int done) {
+                progress.add(done);
+            }
+        }).get(10, TimeUnit.SECONDS);
+
+        // .first and a task in each of the two directories, and the directories
+        assertEquals(6, deleted);
+        assertEquals(ImmutableList.of(1, 2, 3, 4, 5, 6), progress);
+        assertNull(written.childStores.getIfPresent(one.id()));
+        assertFalse(Files.exists(path.resolve(one.id().asString() + "@")));
+        assertEquals(ImmutableList.of("two"), titlesLoadedFrom(path, LoadMode.SERIAL));
+    }
+
+    @Test
+    public void shouldDeleteOrphanedChildrenOnLoad() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        LinkedTask one = written.create().title("one");
+        written.createChildOf(one);
+        Path orphan = Files.createDirectory(path.resolve(TaskId.random().asString() + "@"));
+        Files.write(orphan.resolve(TaskId.random().asString()), new byte[0]);
+
+        new FileBasedTaskStore(path).load();
+        LinkedTaskStore.awaitSubtreeDeletions();
+
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(path.resolve(one.id().asString() + "@")));
+    }
+
+    @Test
+    public void shouldKeepChildrenOfTaskThatWasNeverChanged() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        written.create();
+        LinkedTask parent = written.create();
+        for (int i = 0; i < 5; i++) {
+            written.createChildOf(parent);
+        }
+        written.close();
+
+        FileBasedTaskStore loaded = new FileBasedTaskStore(path);
+        loaded.load();
+        LinkedTaskStore.awaitSubtreeDeletions();
+
+        assertEquals(2, loaded.taskList.size());
+        assertEquals(5, ((LinkedTaskStore) loaded.childrenOf(loaded.getById(parent.id()))).taskList.size());
+    }
+
+    @Test
+    public void shouldRestoreMissingTaskThatIsLinkedAndHasChildren() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        written.create().title("one");
+        LinkedTask parent = written.create().title("two");
+        written.createChildOf(parent).<String> getProperty("title").setValue("sub");
+        written.close();
+        // e.g. the sync hasn't delivered it yet
+        Files.delete(path.resolve(parent.id().asString()));
+
+        FileBasedTaskStore loaded = new FileBasedTaskStore(path);
+        assertEquals(Lists.newArrayList("one", null), titlesLoadedFrom(loaded));
+        LinkedTaskStore.awaitSubtreeDeletions();
+
+        assertTrue(Files.exists(path.resolve(parent.id().asString())));
+        assertEquals("sub", ((LinkedTaskStore) loaded.childrenOf(loaded.getById(parent.id()))).taskList.get(0)
+                .title());
+    }
+
+    @Test
+    public void shouldNotDeleteChildrenWhenChildStoreLoads() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        LinkedTask one = written.create().title("one");
+        written.createChildOf(one).<String> getProperty("title").setValue("sub");
+        written.close();
+        // a sync has delivered the children of a new task, but not the task yet
+        Path early = Files.createDirectory(path.resolve(one.id().asString() + "@").resolve(TaskId.random().asString()
+                + "@"));
+        Files.write(early.resolve(TaskId.random().asString()), new byte[0]);
+
+        FileBasedTaskStore loaded = new FileBasedTaskStore(path);
+        loaded.load();
+        loaded.childrenOf(loaded.taskList.get(0));
+        LinkedTaskStore.awaitSubtreeDeletions();
+
+        assertTrue(Files.exists(early));
+    }
+
+    @Test
+    public void shouldLoadWithBinaryCodec() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path).codec(new BinaryTaskCodec());
+        written.create().title("one");
+        written.create().title("two");
+        written.moveDown(written.taskList.get(0));
+
+        List<String> expected = ImmutableList.of("two", "one");
+        assertEquals(expected, titlesLoadedFrom(new FileBasedTaskStore(path).codec(new BinaryTaskCodec())));
+        assertEquals(expected, titlesLoadedFrom(new FileBasedTaskStore(path).codec(new BinaryTaskCodec()).loadMode(
+                LoadMode.PARALLEL)));
+    }
+
+    @Test
+    public void shouldWriteBehind() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path).writeBehind(1, TimeUnit.HOURS);
+        LinkedTask one = written.create().title("one");
+        Path onePath = path.resolve(one.id().asString());
+
+        one.title("one changed");
+        assertFalse(Files.exists(onePath));
+
+        written.flush();
+        assertEquals(ImmutableList.of("one changed"), titlesLoadedFrom(path, LoadMode.SERIAL));
+        written.close();
+    }
+
+    @Test
+    public void shouldNotWriteBehindRemovedTask() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path).writeBehind(1, TimeUnit.HOURS);
+        LinkedTask one = written.create().title("one");
+        written.flush();
+        LinkedTask two = written.create().title("two");
+
+        written.remove(two);
+        written.close();
+
+        assertFalse(Files.exists(path.resolve(two.id().asString())));
+        assertTrue(Files.exists(path.resolve(one.id().asString())));
+    }
+
+    @Test
+    public void shouldDeleteRemovedTaskWithTheRelinkBehindTransactionally() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path).writeBehind(1, TimeUnit.HOURS).transactional();
+        written.create().title("one");
+        LinkedTask two = written.create().title("two");
+        written.create().title("three");
+        written.flush();
+        two.title("two changed");
+
+        written.remove(two);
+        // committed and durable, but the write-behind queue isn't drained, like in a crash
+        written.beginTransaction().commit().get(10, TimeUnit.SECONDS);
+
+        assertEquals(ImmutableList.of("one", "three"), titlesLoadedFrom(path, LoadMode.PARALLEL));
+        written.close();
+        assertFalse(Files.exists(path.resolve(two.id().asString())));
+    }
+
+    @Test
+    public void shouldReorderTransactionally() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path).transactional();
+        written.create().title("one");
+        LinkedTask two = written.create().title("two");
+        LinkedTask three = written.create().title("three");
+
+        written.moveUp(two);
+        written.moveDown(three);
+        written.close();
+
+        assertEquals(ImmutableList.of("two", "one", "three"), titlesLoadedFrom(path, LoadMode.SERIAL));
+        assertFalse(Files.exists(path.resolve(GroupCommitter.INTENT)));
+    }
+
+    @Test
+    public void shouldCreateAllWithOneWritePerTask() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("new");
+        final List<String> writes = Lists.newArrayList();
+        FileBasedTaskStore written = new FileBasedTaskStore(path) {
+            @Override
+            protected void save(LinkedTask task) {
+                writes.add(task.title());
+                super.save(task);
+            }
+
+            @Override
+            protected void saveFirst() {
+                writes.add(".first");
+                super.saveFirst();
+            }
+        };
+        final List<Object> changes = Lists.newArrayList();
+        written.addListener(new ListChangeListener<Task>() {
+            @Override
+            public void onChanged(Change<? extends Task> change) {
+                changes.add(change);
+            }
+        });
+
+        written.createAll(ImmutableList.of(new LinkedTask().title("one"), new LinkedTask().title("two")));
+        written.createAll(ImmutableList.of(new LinkedTask().title("three").done(true)));
+
+        assertEquals(ImmutableList.of("one", "two", ".first", "three", "two"), writes);
+        assertEquals(2, changes.size());
+        assertEquals(ImmutableList.of("one", "two", "three"), titlesLoadedFrom(path, LoadMode.SERIAL));
+    }
+
+    @Test
+    public void shouldMoveInAndOutWithChildren() throws Exception {
+        assertMovesInAndOut(new FileBasedTaskStore(folder.getRoot().toPath()));
+    }
+
+    @Test
+    public void shouldMoveInAndOutWithChildrenBehindTransactionally() throws Exception {
+        assertMovesInAndOut(new FileBasedTaskStore(folder.getRoot().toPath()).writeBehind(1, TimeUnit.HOURS)
+                .transactional());
+    }
+
+    private void assertMovesInAndOut(FileBasedTaskStore written) {
+        Path path = folder.getRoot().toPath();
+        LinkedTask one = written.create().title("one");
+        LinkedTask two = written.create().title("two");
+        written.create().title("three");
+        LinkedTaskStore twoChildren = (LinkedTaskStore) written.childrenOf(two);
+        LinkedTask sub = twoChildren.create().title("sub");
+        ((LinkedTaskStore) twoChildren.childrenOf(sub)).create().title("subsub");
+
+        written.moveIn(two);
+
+        LinkedTaskStore oneChildren = (LinkedTaskStore) written.childrenOf(one);
+        assertEquals(ImmutableList.of(two), oneChildren.taskList);
+        assertSame(twoChildren, oneChildren.childrenOf(two));
+        assertEquals(path.resolve(one.id().asString() + "@").resolve(two.id().asString() + "@"), twoChildren.path);
+        assertNull(written.loadedChildStore(two.id()));
+        twoChildren.create().title("sub2");
+        written.flush();
+        assertFalse(Files.exists(path.resolve(two.id().asString() + "@")));
+        assertEquals(ImmutableList.of("one", "three"), titlesLoadedFrom(path, LoadMode.SERIAL));
+        assertEquals(ImmutableList.of("sub", "sub2"), titlesLoadedFrom(twoChildren.path, LoadMode.SERIAL));
+        assertEquals(ImmutableList.of("subsub"), titlesLoadedFrom(twoChildren.childPath(sub.id()), LoadMode.SERIAL));
+
+        oneChildren.moveOut(two);
+
+        assertTrue(oneChildren.taskList.isEmpty());
+        assertSame(twoChildren, written.childrenOf(two));
+        written.close();
+        assertEquals(ImmutableList.of(), titlesLoadedFrom(path.resolve(one.id().asString() + "@"), LoadMode.SERIAL));
+        assertEquals(ImmutableList.of("one", "two", "three"), titlesLoadedFrom(path, LoadMode.SERIAL));
+        assertEquals(ImmutableList.of("sub", "sub2"), titlesLoadedFrom(path.resolve(two.id().asString() + "@"),
+                LoadMode.SERIAL));
+    }
+
+    @Test
+    public void shouldLoadChildrenLazily() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        LinkedTask one = written.create().title("one");
+        written.createChildOf(one).<String> getProperty("title").setValue("sub");
+        written.close();
+
+        FileBasedTaskStore loaded = new FileBasedTaskStore(path);
+        loaded.load();
+        assertEquals(0, loaded.childStores.size());
+
+        LinkedTaskStore children = (LinkedTaskStore) loaded.loadChildrenOf(loaded.taskList.get(0)).get();
+        assertEquals("sub", children.taskList.get(0).title());
+        assertSame(children, loaded.childrenOf(loaded.taskList.get(0)));
+        assertEquals(1, loaded.childStoreStats().hitCount());
+        assertEquals(1, loaded.childStoreStats().missCount());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedChildren() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        written.maximumChildWeight(2);
+        LinkedTask one = written.create().title("one");
+        LinkedTask two = written.create().title("two");
+        written.createChildOf(one).<String> getProperty("title").setValue("sub");
+        written.createChildOf(two);
+
+        assertEquals(1, written.childStores.size());
+        assertNull(written.childStores.getIfPresent(one.id()));
+        assertEquals(1, written.childStoreStats().evictionCount());
+        assertEquals("sub", ((LinkedTaskStore) written.childrenOf(one)).taskList.get(0).title());
+    }
+
+    @Test
+    public void shouldWriteEvictedChildrenBehind() throws Exception {
+        assertEvictedChildrenKept(new FileBasedTaskStore(folder.getRoot().toPath()).writeBehind(1, TimeUnit.HOURS));
+    }
+
+    @Test
+    public void shouldWriteEvictedChildrenBehindTransactionally() throws Exception {
+        assertEvictedChildrenKept(new FileBasedTaskStore(folder.getRoot().toPath()).writeBehind(1, TimeUnit.HOURS)
+                .transactional());
+    }
+
+    private void assertEvictedChildrenKept(FileBasedTaskStore written) {
+        Path path = folder.getRoot().toPath();
+        written.maximumChildWeight(3);
+        LinkedTask one = written.create().title("one");
+        LinkedTask two = written.create().title("two");
+        TaskStore oneChildren = written.childrenOf(one);
+        oneChildren.create().<String> getProperty("title").setValue("a");
+        oneChildren.create().<String> getProperty("title").setValue("b");
+        written.childrenOf(two).create().<String> getProperty("title").setValue("x");
+        assertEquals(1, written.childStoreStats().evictionCount());
+
+        assertEquals(ImmutableList.of("a", "b"), titles(((LinkedTaskStore) written.childrenOf(one)).taskList));
+        written.close();
+        assertEquals(ImmutableList.of("a", "b"), titlesLoadedFrom(path.resolve(one.id().asString() + "@"),
+                LoadMode.SERIAL));
+        assertEquals(ImmutableList.of("x"), titlesLoadedFrom(path.resolve(two.id().asString() + "@"),
+                LoadMode.SERIAL));
+    }
+
+    private static List<String> titles(List<LinkedTask> tasks) {
+        List<String> titles = Lists.newArrayList();
+        for (LinkedTask task : tasks) {
+            titles.add(task.title());
+        }
+        return titles;
+    }
+
+    @Test
+    public void shouldWeighChildStoreAgainWhenItGrows() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        written.maximumChildWeight(3);
+        LinkedTask one = written.create().title("one");
+        TaskStore children = written.childrenOf(one);
+        children.create().<String> getProperty("title").setValue("a");
+        children.create().<String> getProperty("title").setValue("b");
+        assertEquals(0, written.childStoreStats().evictionCount());
+
+        children.create().<String> getProperty("title").setValue("c");
+
+        assertEquals(1, written.childStoreStats().evictionCount());
+        assertNull(written.childStores.getIfPresent(one.id()));
+    }
+
+    @Test
+    public void shouldShareTheWeightLimitWithTheChildren() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        written.maximumChildWeight(3);
+        LinkedTask one = written.create().title("one");
+        LinkedTaskStore children = (LinkedTaskStore) written.childrenOf(one);
+        LinkedTask sub = children.create().title("sub");
+        assertEquals(0, written.childStoreStats().evictionCount());
+
+        children.createChildOf(sub).<String> getProperty("title").setValue("subsub");
+
+        assertEquals(1, written.childStoreStats().evictionCount());
+        assertNull(written.childStores.getIfPresent(one.id()));
+        LinkedTaskStore reloaded = (LinkedTaskStore) written.childrenOf(one);
+        assertNotSame(children, reloaded);
+        LinkedTaskStore grandchildren = (LinkedTaskStore) reloaded.childrenOf(reloaded.taskList.get(0));
+        assertEquals("subsub", grandchildren.taskList.get(0).title());
+    }
+
+    @Test
+    public void shouldLoadWithOneChange() throws Exception {
+        Path path = folder.getRoot().toPath();
+        FileBasedTaskStore written = new FileBasedTaskStore(path);
+        written.create().title("one");
+        written.create().title("two");
+        written.create().title("three");
+        for (LoadMode loadMode : LoadMode.values()) {
+            FileBasedTaskStore loaded = new FileBasedTaskStore(path).loadMode(loadMode);
+            final List<Integer> addedSizes = Lists.newArrayList();
+            loaded.addListener(new ListChangeListener<Task>() {
+                @Override
+                public void onChanged(Change<? extends Task> change) {
+                    while (change.next()) {
+                        addedSizes.add(change.getAddedSize());
+                    }
+                }
+            });
+
+            loaded.load();
+
+            assertEquals(ImmutableList.of(3), addedSizes);
+            assertPositionsConsistent(loaded);
+            assertIndexConsistent(loaded);
+        }
+    }
+
+    private Map<TaskId, LinkedTask> tasksById(LinkedTask... tasks) {
+        Map<TaskId, LinkedTask> map = Maps.newHashMap();
+        for (LinkedTask task : tasks) {
+            map.put(task.id(), task);
+        }
+        return map;
+    }
+
+    @Test
+    public void shouldChainTasksFromFirst() throws Exception {
+        LinkedTask one = new LinkedTask().id(TaskId.random());
+        LinkedTask two = new LinkedTask().id(TaskId.random());
+        LinkedTask three = new LinkedTask().id(TaskId.random());
+        two.next(one);
+        one.next(three);
+
+        List<LinkedTask> chain = store.chain(two.id(), tasksById(one, two, three));
+
+        assertEquals(ImmutableList.of(two, one, three), chain);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldDetectBrokenChain() throws Exception {
+        LinkedTask one = new LinkedTask().id(TaskId.random());
+        LinkedTask two = new LinkedTask().id(TaskId.random());
+        one.next(two);
+
+        store.chain(one.id(), tasksById(one));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldDetectCyclicChain() throws Exception {
+        LinkedTask one = new LinkedTask().id(TaskId.random());
+        LinkedTask two = new LinkedTask().id(TaskId.random());
+        one.next(two);
+        two.next(one);
+
+        store.chain(one.id(), tasksById(one, two));
+    }
+
+    @Test
+    public void shouldRepairChainFromItsPieces() throws Exception {
+        LinkedTask one = new LinkedTask().id(TaskId.random());
+        LinkedTask two = new LinkedTask().id(TaskId.random());
+        LinkedTask three = new LinkedTask().id(TaskId.random());
+        LinkedTask four = new LinkedTask().id(TaskId.random());
+        LinkedTask loop1 = new LinkedTask().id(TaskId.random());
+        LinkedTask loop2 = new LinkedTask().id(TaskId.random());
+        one.next(two);
+        two.next(new LinkedTask().id(TaskId.random()));
+        three.next(four);
+        loop1.next(loop2);
+        loop2.next(loop1);
+
+        List<LinkedTask> chain = store.repairedChain(one.id(), tasksById(one, two, three, four, loop1, loop2));
+
+        assertEquals(ImmutableList.of(one, two, three, four), chain.subList(0, 4));
+        assertEquals(ImmutableSet.of(loop1, loop2), ImmutableSet.copyOf(chain.subList(4, 6)));
     }
 }
@@ -0,0 +1,100 @@
+package fxtasks.model;
+
+import static com.google.common.base.Charsets.*;
+import static org.junit.Assert.*;
+
+import java.nio.file.*;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class GroupCommitterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    /** not started yet, so transactions pile up until the test starts it */
+    private final GroupCommitter committer = new GroupCommitter(false);
+    private boolean committerStarted = false;
+
+    @Before
+    public void setPath() {
+        path = folder.getRoot().toPath();
+    }
+
+    @After
+    public void closeCommitter() {
+        if (!committerStarted)
+            committer.start();
+        committer.close();
+    }
+
+    private void start() {
+        committer.start();
+        committerStarted = true;
+    }
+
+    private String read(String name) throws Exception {
+        return new String(Files.readAllBytes(path.resolve(name)), UTF_8);
+    }
+
+    @Test
+    public void shouldCommitWaitingTransactionsAsOneBatch() throws Exception {
+        Files.write(path.resolve("old"), "old".getBytes(UTF_8));
+        committer.begin().write(path.resolve("one"), "1".getBytes(UTF_8)).commit();
+        committer.begin().write(path.resolve("two"), "2".getBytes(UTF_8)).delete(path.resolve("old")).commit();
+        ListenableFuture<Void> last = committer.begin().write(path.resolve("one"), "1b".getBytes(UTF_8)).commit();
+
+        start();
+        last.get();
+
+        assertEquals(1, committer.batches);
+        // at the commit point, and after the renames, before the intent file is removed
+        assertEquals(2, committer.directorySyncs);
+        assertEquals("1b", read("one"));
+        assertEquals("2", read("two"));
+        assertFalse(Files.exists(path.resolve("old")));
+        assertFalse(Files.exists(path.resolve(GroupCommitter.INTENT)));
+    }
+
+    @Test
+    public void shouldDropAbortedTransaction() throws Exception {
+        start();
+        committer.begin().write(path.resolve("one"), "1".getBytes(UTF_8)).abort();
+
+        committer.flush();
+
+        assertFalse(Files.exists(path.resolve("one")));
+    }
+
+    @Test
+    public void shouldRecoverFromIntent() throws Exception {
+        Files.write(path.resolve("one"), "old".getBytes(UTF_8));
+        Files.write(path.resolve(".one.tmp"), "new".getBytes(UTF_8));
+        Files.write(path.resolve("two"), "two".getBytes(UTF_8));
+        Files.write(path.resolve(GroupCommitter.INTENT), ".one.tmp\tone\n\ttwo\n".getBytes(UTF_8));
+        Files.write(path.resolve(".three.tmp"), "stale".getBytes(UTF_8));
+
+        GroupCommitter.recover(path);
+
+        assertEquals("new", read("one"));
+        assertFalse(Files.exists(path.resolve(".one.tmp")));
+        assertFalse(Files.exists(path.resolve(".three.tmp")));
+        assertFalse(Files.exists(path.resolve("two")));
+        assertFalse(Files.exists(path.resolve(GroupCommitter.INTENT)));
+    }
+
+    @Test
+    public void shouldDeleteTempFilesOfBatchInterruptedBeforeCommitPoint() throws Exception {
+        Files.write(path.resolve("one"), "old".getBytes(UTF_8));
+        Files.write(path.resolve(".one.tmp"), "new".getBytes(UTF_8));
+        start();
+
+        committer.recoverBetweenBatches(path);
+
+        assertEquals("old", read("one"));
+        assertFalse(Files.exists(path.resolve(".one.tmp")));
+    }
+}
@@ -0,0 +1,404 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.*;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+public class JournalTaskStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    private JournalTaskStore store;
+
+    @Before
+    public void createStore() {
+        path = folder.getRoot().toPath();
+        store = new JournalTaskStore(path);
+    }
+
+    private JournalTaskStore reload() {
+        store.close();
+        JournalTaskStore reloaded = new JournalTaskStore(path);
+        reloaded.load();
+        return reloaded;
+    }
+
+    private List<String> titles(LinkedTaskStore taskStore) {
+        List<String> titles = Lists.newArrayList();
+        for (LinkedTask task : taskStore.taskList) {
+            titles.add(task.title());
+        }
+        return titles;
+    }
+
+    private void assertReloaded(String... titles) {
+        JournalTaskStore reloaded = reload();
+        assertEquals(ImmutableList.copyOf(titles), titles(reloaded));
+        for (LinkedTask task : reloaded.taskList) {
+            assertSame(task, reloaded.getById(task.id()));
+        }
+    }
+
+    @Test
+    public void shouldCreate() throws Exception {
+        store.create().title("title");
+
+        assertReloaded("title");
+    }
+
+    @Test
+    public void shouldReloadDone() throws Exception {
+        store.create().title("title").<Boolean> getProperty("done").setValue(true);
+
+        JournalTaskStore reloaded = reload();
+
+        assertEquals(true, reloaded.taskList.get(0).value("done"));
+    }
+
+    @Test
+    public void shouldRemoveOne() throws Exception {
+        Task created = store.create().title("title");
+
+        store.remove(created);
+
+        assertEquals(0, store.taskList.size());
+        assertReloaded();
+    }
+
+    @Test
+    public void shouldRemoveFirstMiddleAndLast() throws Exception {
+        LinkedTask one = store.create().title("one");
+        store.create().title("two");
+        LinkedTask three = store.create().title("three");
+        store.create().title("four");
+        LinkedTask five = store.create().title("five");
+
+        store.remove(one);
+        store.remove(three);
+        store.remove(five);
+
+        assertReloaded("two", "four");
+    }
+
+    @Test
+    public void shouldCreate4() throws Exception {
+        store.create().title("one");
+        store.create().title("two");
+        store.create().title("three");
+        store.create().title("four");
+
+        assertReloaded("one", "two", "three", "four");
+    }
+
+    @Test
+    public void shouldCreateAll() throws Exception {
+        store.create().title("one");
+
+        store.createAll(ImmutableList.of(new LinkedTask().title("two"), new LinkedTask().title("three")));
+
+        assertReloaded("one", "two", "three");
+    }
+
+    @Test
+    public void shouldMoveIn() throws Exception {
+        LinkedTask one = store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        store.createChildOf(two).<String> getProperty("title").setValue("sub");
+
+        store.moveIn(two);
+
+        JournalTaskStore reloaded = reload();
+        assertEquals(ImmutableList.of("one"), titles(reloaded));
+        LinkedTaskStore oneChildren = (LinkedTaskStore) reloaded.childrenOf(one);
+        assertEquals(ImmutableList.of("two"), titles(oneChildren));
+        assertEquals(ImmutableList.of("sub"), titles((LinkedTaskStore) oneChildren.childrenOf(two)));
+    }
+
+    @Test
+    public void shouldMoveDown() throws Exception {
+        store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        store.create().title("three");
+        store.create().title("four");
+
+        store.moveDown(two);
+
+        assertReloaded("one", "three", "two", "four");
+    }
+
+    @Test
+    public void shouldMoveDownToLast() throws Exception {
+        store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        store.create().title("three");
+
+        store.moveDown(two);
+
+        assertReloaded("one", "three", "two");
+    }
+
+    @Test
+    public void shouldMoveDownFromFirst() throws Exception {
+        LinkedTask one = store.create().title("one");
+        store.create().title("two");
+        store.create().title("three");
+
+        store.moveDown(one);
+
+        assertReloaded("two", "one", "three");
+    }
+
+    @Test
+    public void shouldMoveUp() throws Exception {
+        store.create().title("one");
+        store.create().title("two");
+        LinkedTask three = store.create().title("three");
+        store.create().title("four");
+
+        store.moveUp(three);
+
+        assertReloaded("one", "three", "two", "four");
+    }
+
+    @Test
+    public void shouldMoveUpToFirst() throws Exception {
+        store.create().title("one");
+        LinkedTask two = store.create().title("two");
+        store.create().title("three");
+
+        store.moveUp(two);
+
+        assertReloaded("two", "one", "three");
+    }
+
+    @Test
+    public void shouldMoveUpFromLast() throws Exception {
+        store.create().title("one");
+        store.create().title("two");
+        LinkedTask three = store.create().title("three");
+
+        store.moveUp(three);
+
+        assertReloaded("one", "three", "two");
+    }
+
+    private List<String> childTitles(Task parent) {
+        ((JournalTaskStore) store.childrenOf(parent)).close();
+        JournalTaskStore reloadedChild = new JournalTaskStore(path.resolve(parent.id().asString() + "@"));
+        reloadedChild.load();
+        return titles(reloadedChild);
+    }
+
+    @Test
+    public void shouldAddSubtask() throws Exception {
+        LinkedTask one = store.create().title("one");
+        Task sub1 = store.createChildOf(one);
+        sub1.<String> getProperty("title").setValue("sub1");
+        Task sub2 = store.createChildOf(one);
+        sub2.<String> getProperty("title").setValue("sub2");
+
+        assertEquals(ImmutableList.of("sub1", "sub2"), childTitles(one));
+        assertReloaded("one");
+    }
+
+    @Test
+    public void shouldRemoveSubtask() throws Exception {
+        LinkedTask one = store.create().title("one");
+        Task sub1 = store.createChildOf(one);
+        sub1.<String> getProperty("title").setValue("sub1");
+
+        store.removeChildOf(one, sub1);
+
+        assertEquals(ImmutableList.of(), childTitles(one));
+    }
+
+    @Test
+    public void shouldDeleteChildrenOfRemovedTask() throws Exception {
+        LinkedTask one = store.create().title("one");
+        store.createChildOf(one);
+
+        store.remove(one, TaskStore.Progress.NONE).get(10, TimeUnit.SECONDS);
+
+        assertFalse(Files.exists(path.resolve(one.id().asString() + "@")));
+        assertReloaded();
+    }
+
+    @Test
+    public void shouldCompact() throws Exception {
+        store.compactionThreshold(1000);
+        LinkedTask one = store.create().title("one");
+        store.create().title("two");
+        for (int i = 0; i < 100; i++) {
+            one.title("one " + i);
+            store.flush();
+        }
+
+        assertTrue(store.journalSize() < 1000);
+        assertReloaded("one 99", "two");
+    }
+
+    @Test
+    public void shouldCompactOnlyBetweenOperations() throws Exception {
+        store.compactionThreshold(1);
+        store.create().title("a");
+        store.flush();
+        LinkedTask b = store.create().title("b");
+        store.flush();
+        store.create().title("c");
+        store.flush();
+        store.moveUp(b);
+        store.flush();
+        assertReloaded("b", "a", "c");
+
+        store = reload();
+        store.compactionThreshold(1);
+        store.remove(store.taskList.get(0));
+        store.flush();
+        assertReloaded("a", "c");
+    }
+
+    @Test
+    public void shouldDropIncompleteRecord() throws Exception {
+        store.create().title("one");
+        store.close();
+        Path journal = path.resolve(".journal");
+        long validSize = Files.size(journal);
+        Files.write(journal, new byte[] { 1, 1, 0 }, StandardOpenOption.APPEND);
+
+        assertReloaded("one");
+        assertEquals(validSize, Files.size(journal));
+    }
+
+    @Test
+    public void shouldDropUndecodableRecord() throws Exception {
+        store.create().title("one");
+        store.close();
+        Path journal = path.resolve(".journal");
+        long validSize = Files.size(journal);
+        Files.write(journal, new byte[] { (byte) 200, 1, 0 }, StandardOpenOption.APPEND);
+
+        assertReloaded("one");
+        assertEquals(validSize, Files.size(journal));
+    }
+
+    @Test
+    public void shouldDropZeroedRecord() throws Exception {
+        store.create().title("one");
+        store.close();
+        Path journal = path.resolve(".journal");
+        long validSize = Files.size(journal);
+        Files.write(journal, new byte[20], StandardOpenOption.APPEND);
+
+        assertReloaded("one");
+        assertEquals(validSize, Files.size(journal));
+    }
+
+    @Test
+    public void shouldWriteIdsAsTwoLongs() throws Exception {
+        LinkedTask task = store.create();
+        store.flush();
+
+        ByteArrayDataOutput expected = ByteStreams.newDataOutput();
+        expected.writeByte(5); // FORMAT
+        expected.writeByte(2);
+        expected.writeByte(0); // CREATE
+        expected.writeBoolean(true);
+        expected.writeLong(task.id().mostSignificantBits());
+        expected.writeLong(task.id().leastSignificantBits());
+        byte[] journal = Files.readAllBytes(path.resolve(".journal"));
+        assertArrayEquals(expected.toByteArray(), Arrays.copyOf(journal, expected.toByteArray().length));
+    }
+
+    @Test
+    public void shouldReadAndAppendToJournalWithStringIds() throws Exception {
+        String id = TaskId.random().asString();
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeByte(5); // FORMAT
+        out.writeByte(1);
+        out.writeByte(0); // CREATE
+        writeString(out, id);
+        out.writeByte(1); // PROPERTIES
+        writeString(out, id);
+        out.writeShort(1);
+        out.writeUTF("title");
+        out.writeByte(PropertyType.STRING.ordinal());
+        writeString(out, "old");
+        out.writeByte(3); // FIRST
+        writeString(out, id);
+        Files.write(path.resolve(".journal"), out.toByteArray());
+        store.load();
+
+        store.create().title("new");
+
+        assertReloaded("old", "new");
+    }
+
+    private static void writeString(ByteArrayDataOutput out, String string) {
+        out.writeBoolean(true);
+        out.writeInt(string.length());
+        out.write(string.getBytes(Charsets.UTF_8));
+    }
+
+    @Test
+    public void shouldReloadLongTitle() throws Exception {
+        String title = Strings.repeat("long title ", 10000);
+        store.create().title(title);
+
+        assertReloaded(title);
+    }
+
+    @Test
+    public void shouldReadAndAppendToJournalWithShortStrings() throws Exception {
+        String id = TaskId.random().asString();
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeByte(0); // CREATE
+        out.writeBoolean(true);
+        out.writeUTF(id);
+        out.writeByte(1); // PROPERTIES
+        out.writeBoolean(true);
+        out.writeUTF(id);
+        out.writeShort(1);
+        out.writeUTF("title");
+        out.writeByte(PropertyType.STRING.ordinal());
+        out.writeBoolean(true);
+        out.writeUTF("old");
+        out.writeByte(3); // FIRST
+        out.writeBoolean(true);
+        out.writeUTF(id);
+        Files.write(path.resolve(".journal"), out.toByteArray());
+        store.load();
+
+        store.create().title("new");
+
+        assertReloaded("old", "new");
+    }
+
+    @Test
+    public void shouldMigrateFileBasedStore() throws Exception {
+        FileBasedTaskStore fileBased = new FileBasedTaskStore(path);
+        fileBased.create().title("one");
+        LinkedTask two = fileBased.create().title("two");
+        fileBased.create().title("three");
+        fileBased.createChildOf(two).<String> getProperty("title").setValue("sub");
+        fileBased.moveUp(two);
+
+        JournalTaskStore.migrate(path);
+
+        assertReloaded("two", "one", "three");
+        JournalTaskStore child = new JournalTaskStore(path.resolve(two.id().asString() + "@"));
+        child.load();
+        assertEquals(ImmutableList.of("sub"), titles(child));
+    }
+}
@@ -0,0 +1,76 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import javafx.beans.*;
+import javafx.beans.property.Property;
+
+import org.junit.Test;
+
+public class LinkedTaskTest {
+    private final LinkedTask task = new LinkedTask().id(TaskId.random());
+    private int invalidations = 0;
+
+    private void countInvalidations() {
+        task.addListener(new InvalidationListener() {
+            @Override
+            public void invalidated(Observable observable) {
+                assertSame(task, observable);
+                invalidations++;
+            }
+        });
+    }
+
+    @Test
+    public void shouldNotifyChangeOfPlainValue() throws Exception {
+        countInvalidations();
+
+        task.title("one");
+        task.title("one");
+        task.value("done", true);
+
+        assertEquals(2, invalidations);
+        assertEquals("one", task.title());
+    }
+
+    @Test
+    public void shouldCreatePropertyWithCurrentValue() throws Exception {
+        task.title("one").value("done", true);
+
+        assertEquals("one", task.getProperty("title").getValue());
+        assertEquals(true, task.getProperty("done").getValue());
+        assertSame(task.getProperty("title"), task.getProperty("title"));
+    }
+
+    @Test
+    public void shouldKeepValueInPropertyOnceCreated() throws Exception {
+        countInvalidations();
+        Property<String> title = task.getProperty("title");
+
+        task.title("one");
+        assertEquals("one", title.getValue());
+        title.setValue("two");
+
+        assertEquals("two", task.title());
+        assertEquals(2, invalidations);
+    }
+
+    @Test
+    public void shouldStopNotifyingRemovedListener() throws Exception {
+        InvalidationListener listener = new InvalidationListener() {
+            @Override
+            public void invalidated(Observable observable) {
+                fail("removed listener notified");
+            }
+        };
+        task.addListener(listener);
+        task.removeListener(listener);
+
+        task.title("one");
+    }
+
+    @Test
+    public void shouldReturnNullForUnknownProperty() throws Exception {
+        assertNull(task.getProperty("color"));
+    }
+}
@@ -0,0 +1,126 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import javafx.collections.*;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.*;
+
+public class LiveViewTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LinkedTaskStore store;
+    private LinkedTask a;
+    private LinkedTask b;
+    private LinkedTask c;
+
+    @Before
+    public void before() {
+        store = new FileBasedTaskStore(folder.getRoot().toPath());
+        store.load();
+        c = store.create().title("c");
+        a = store.create().title("a");
+        b = store.create().title("B").done(true);
+    }
+
+    @Test
+    public void shouldFilterAndSort() throws Exception {
+        assertEquals(Arrays.asList(c, a), store.view(TaskViews.OPEN));
+        assertEquals(Arrays.asList(b), store.view(TaskViews.DONE));
+        assertEquals(Arrays.asList(a, b, c), store.view(TaskViews.ALL, TaskViews.BY_TITLE));
+    }
+
+    @Test
+    public void shouldFollowPropertyChanges() throws Exception {
+        ObservableList<Task> open = store.view(TaskViews.OPEN);
+        ObservableList<Task> byTitle = store.view(TaskViews.OPEN, TaskViews.BY_TITLE);
+        final List<String> changes = Lists.newArrayList();
+        open.addListener(new ListChangeListener<Task>() {
+            @Override
+            public void onChanged(Change<? extends Task> change) {
+                while (change.next()) {
+                    changes.add(change.getFrom() + (change.wasAdded() ? "+" : "-"));
+                }
+            }
+        });
+
+        b.done(false);
+        a.done(true);
+        c.title("d");
+
+        assertEquals(Arrays.asList(c, b), open);
+        assertEquals(Arrays.asList("2+", "1-"), changes);
+        assertEquals(Arrays.asList(b, c), byTitle);
+    }
+
+    @Test
+    public void shouldFollowTheStore() throws Exception {
+        ObservableList<Task> open = store.view(TaskViews.OPEN);
+        ObservableList<Task> byTitle = store.view(TaskViews.ALL, TaskViews.BY_TITLE);
+
+        store.moveUp(a);
+        LinkedTask d = store.create().title("a");
+        store.remove(d);
+        LinkedTask e = store.create();
+
+        assertEquals(Arrays.asList(a, c, e), open);
+        assertEquals(Arrays.asList(e, a, b, c), byTitle);
+    }
+
+    @Test
+    public void shouldFollowAMove() throws Exception {
+        ObservableList<Task> open = store.view(TaskViews.OPEN);
+        LinkedTask d = store.create().title("d");
+
+        store.moveTo(d, 0);
+        store.moveAfter(c, b);
+
+        assertEquals(Arrays.asList(d, a, c), open);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldBeReadOnly() throws Exception {
+        store.view(TaskViews.ALL).clear();
+    }
+
+    @Test
+    public void shouldMatchAFreshView() throws Exception {
+        Random random = new Random(7);
+        List<ObservableList<Task>> views = ImmutableList.of(store.view(TaskViews.OPEN), store.view(TaskViews.DONE),
+                store.view(TaskViews.OPEN, TaskViews.BY_TITLE));
+        for (int i = 0; i < 500; i++) {
+            LinkedTask task = store.taskList.get(random.nextInt(store.taskList.size()));
+            switch (random.nextInt(6)) {
+            case 0:
+                store.create().title("t" + random.nextInt(50)).done(random.nextBoolean());
+                break;
+            case 1:
+                task.done(!task.done());
+                break;
+            case 2:
+                task.title("t" + random.nextInt(50));
+                break;
+            case 3:
+                store.moveUp(task);
+                break;
+            case 4:
+                store.moveTo(task, random.nextInt(store.taskList.size()));
+                break;
+            default:
+                store.moveDown(task);
+                break;
+            }
+        }
+
+        assertEquals(ImmutableList.copyOf(store.view(TaskViews.OPEN)), views.get(0));
+        assertEquals(ImmutableList.copyOf(store.view(TaskViews.DONE)), views.get(1));
+        assertEquals(ImmutableList.copyOf(store.view(TaskViews.OPEN, TaskViews.BY_TITLE)), views.get(2));
+        assertEquals(store.taskList.size(), views.get(0).size() + views.get(1).size());
+    }
+}
@@ -0,0 +1,158 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Strings;
+
+public class SearchIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SearchIndex index = new SearchIndex();
+
+    private final TaskId milk = TaskId.random();
+    private final TaskId milkAndBread = TaskId.random();
+    private final TaskId millet = TaskId.random();
+
+    @Before
+    public void before() {
+        index.put(milk, "Buy milk");
+        index.put(milkAndBread, "buy milk, and bread");
+        index.put(millet, "Cook millet");
+    }
+
+    @Test
+    public void shouldFindAllWords() throws Exception {
+        assertEquals(Arrays.asList(milkAndBread), index.search("bread MILK", 10));
+        assertEquals(Collections.emptyList(), index.search("bread millet", 10));
+        assertEquals(Collections.emptyList(), index.search(" ,", 10));
+    }
+
+    @Test
+    public void shouldRankExactWordsAndShortTitlesFirst() throws Exception {
+        assertEquals(Arrays.asList(milk, millet, milkAndBread), index.search("mil", 10));
+        assertEquals(Arrays.asList(milk, milkAndBread), index.search("milk", 10));
+        assertEquals(Arrays.asList(millet), index.search("mille", 10));
+        assertEquals(Arrays.asList(milk), index.search("mil", 1));
+    }
+
+    @Test
+    public void shouldReplaceAndRemoveTitles() throws Exception {
+        index.put(milk, "Buy bread");
+        index.remove(millet);
+
+        assertEquals(Arrays.asList(milkAndBread), index.search("milk", 10));
+        assertEquals(Arrays.asList(milk, milkAndBread), index.search("bread", 10));
+        assertEquals(Collections.emptyList(), index.search("millet", 10));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void shouldSaveAndLoad() throws Exception {
+        Path file = folder.getRoot().toPath().resolve(".search-index");
+        index.save(file);
+
+        SearchIndex loaded = SearchIndex.load(file);
+
+        assertEquals(3, loaded.size());
+        assertEquals(index.search("mil", 10), loaded.search("mil", 10));
+    }
+
+    @Test
+    public void shouldIndexStoreAndChildStores() throws Exception {
+        Path path = folder.getRoot().toPath();
+        LinkedTaskStore store = new FileBasedTaskStore(path).searchable(true);
+        store.load();
+        LinkedTask parent = store.create().title("groceries");
+        Task child = store.createChildOf(parent);
+        ((LinkedTask) child).title("buy bread");
+        parent.title("shopping");
+
+        assertEquals(Arrays.asList(parent.id()), store.search("shop"));
+        assertEquals(Arrays.asList(child.id()), store.search("buy"));
+        assertEquals(Collections.emptyList(), store.search("groceries"));
+        store.close();
+
+        // the child store isn't loaded, but its tasks are found in the saved index
+        LinkedTaskStore reopened = new FileBasedTaskStore(path).searchable(true);
+        reopened.load();
+        assertEquals(Arrays.asList(child.id()), reopened.search("bread"));
+
+        reopened.remove(reopened.getById(parent.id()));
+        assertEquals(Collections.emptyList(), reopened.search("shopping"));
+        assertEquals(Collections.emptyList(), reopened.search("bread"));
+        reopened.close();
+    }
+
+    @Test
+    public void shouldDropTasksThatAreGoneWhenTheirStoreIsLoaded() throws Exception {
+        Path path = folder.getRoot().toPath();
+        LinkedTaskStore store = new FileBasedTaskStore(path).searchable(true);
+        store.load();
+        LinkedTask parent = store.create().title("shopping");
+        LinkedTask child = (LinkedTask) store.createChildOf(parent);
+        child.title("buy bread");
+        store.close();
+        // e.g. by a sync, while the child store isn't loaded
+        Files.delete(path.resolve(parent.id().asString() + "@").resolve(child.id().asString()));
+
+        LinkedTaskStore reopened = new FileBasedTaskStore(path).searchable(true);
+        reopened.load();
+        assertEquals(Arrays.asList(child.id()), reopened.search("bread"));
+        reopened.childrenOf(reopened.getById(parent.id()));
+
+        assertEquals(Collections.emptyList(), reopened.search("bread"));
+        reopened.close();
+    }
+
+    @Test
+    public void shouldDropSubtreeOfRemovedTaskFromJournal() throws Exception {
+        Path path = folder.getRoot().toPath();
+        LinkedTaskStore store = new JournalTaskStore(path).searchable(false);
+        store.load();
+        LinkedTask parent = store.create().title("shopping");
+        LinkedTask child = (LinkedTask) store.createChildOf(parent);
+        child.title("buy bread");
+        ((LinkedTask) store.childrenOf(parent).createChildOf(child)).title("whole grain bread");
+
+        store.remove(parent, TaskStore.Progress.NONE).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Collections.emptyList(), store.search("bread"));
+    }
+
+    @Test
+    public void shouldRetainChildrenAndRemoveDescendants() throws Exception {
+        TaskId parent = TaskId.random();
+        TaskId child = TaskId.random();
+        TaskId gone = TaskId.random();
+        index.put(child, parent, "child of milk");
+        index.put(gone, parent, "milk that is gone");
+        index.put(TaskId.random(), child, "grandchild of milk");
+
+        index.retainChildren(parent, Collections.singleton(child));
+        assertEquals(5, index.size());
+        assertFalse(index.search("milk", 10).contains(gone));
+
+        index.removeDescendants(parent);
+        assertEquals(Arrays.asList(milk, milkAndBread), index.search("milk", 10));
+    }
+
+    @Test
+    public void shouldSaveAndLoadLongTitles() throws Exception {
+        Path file = folder.getRoot().toPath().resolve(".search-index");
+        TaskId longTitle = TaskId.random();
+        index.put(longTitle, TaskId.random(), "long " + Strings.repeat("ä", 40000));
+        index.save(file);
+
+        SearchIndex loaded = SearchIndex.load(file);
+
+        assertEquals(Arrays.asList(longTitle), loaded.search("long", 10));
+    }
+}
@@ -0,0 +1,111 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javafx.collections.ListChangeListener;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class StoreWatcherTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** runs the patches on the test thread, like the UI thread would */
+    private final BlockingQueue<Runnable> patches = new LinkedBlockingQueue<>();
+    private final Executor testThread = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            patches.add(command);
+        }
+    };
+
+    private Path path;
+    private FileBasedTaskStore store;
+    private FileBasedTaskStore other;
+
+    @Before
+    public void before() {
+        path = folder.getRoot().toPath();
+        store = new FileBasedTaskStore(path);
+        store.searchable(false);
+        store.load();
+        store.create().title("a");
+        store.create().title("b");
+        store.watch(100, TimeUnit.MILLISECONDS, testThread);
+        other = new FileBasedTaskStore(path);
+        other.load();
+    }
+
+    @After
+    public void after() {
+        store.close();
+        other.close();
+    }
+
+    private void applyPatches() throws InterruptedException {
+        Runnable patch = patches.poll(10, TimeUnit.SECONDS);
+        assertNotNull("no changes seen", patch);
+        do {
+            patch.run();
+        } while ((patch = patches.poll(500, TimeUnit.MILLISECONDS)) != null);
+    }
+
+    private List<String> titles() {
+        List<String> titles = new ArrayList<>();
+        for (LinkedTask task : store.taskList) {
+            titles.add(task.title());
+        }
+        return titles;
+    }
+
+    @Test
+    public void shouldPatchExternalChanges() throws Exception {
+        LinkedTask a = store.taskList.get(0);
+        LinkedTask b = store.taskList.get(1);
+
+        other.taskList.get(0).title("a2");
+        other.create().title("c");
+        applyPatches();
+
+        assertEquals(Arrays.asList("a2", "b", "c"), titles());
+        assertSame(a, store.taskList.get(0));
+        assertSame(b, store.taskList.get(1));
+
+        other.moveUp(other.taskList.get(2));
+        applyPatches();
+
+        assertEquals(Arrays.asList("a2", "c", "b"), titles());
+        assertSame(b, store.taskList.get(2));
+        assertEquals("c", store.getById(store.search("c").get(0)).title());
+    }
+
+    @Test
+    public void shouldPatchExternalDeletes() throws Exception {
+        Files.delete(path.resolve(store.taskList.get(1).id().asString()));
+        applyPatches();
+
+        assertEquals(Arrays.asList("a"), titles());
+    }
+
+    @Test
+    public void shouldIgnoreItsOwnWrites() throws Exception {
+        store.taskList.get(1).title("b2");
+        store.create().title("c");
+        final List<Object> changes = new ArrayList<>();
+        store.taskList.addListener(new ListChangeListener<LinkedTask>() {
+            @Override
+            public void onChanged(Change<? extends LinkedTask> change) {
+                changes.add(change);
+            }
+        });
+        applyPatches();
+
+        assertEquals(Collections.emptyList(), changes);
+        assertEquals(Arrays.asList("a", "b2", "c"), titles());
+    }
+}
@@ -0,0 +1,80 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableSet;
+
+public class TagIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    private LinkedTaskStore store;
+    private LinkedTask work;
+    private LinkedTask home;
+    private LinkedTask both;
+
+    @Before
+    public void before() {
+        path = folder.getRoot().toPath();
+        store = new FileBasedTaskStore(path);
+        store.load();
+        work = store.create().title("work").tags(ImmutableSet.of("work"));
+        store.create().title("untagged");
+        home = store.create().title("home").tags(ImmutableSet.of("home"));
+        both = store.create().title("both").tags(ImmutableSet.of("home", "work"));
+    }
+
+    @Test
+    public void shouldFilterByTags() throws Exception {
+        assertEquals(ImmutableSet.of("home", "work"), store.tags());
+        assertEquals(Arrays.asList(work, both), store.filter(TagFilter.allOf("work")));
+        assertEquals(Arrays.asList(both), store.filter(TagFilter.allOf("work", "home")));
+        assertEquals(Arrays.asList(work, home, both), store.filter(TagFilter.anyOf("work", "home", "other")));
+        assertEquals(Collections.emptyList(), store.filter(TagFilter.allOf("work", "other")));
+        assertEquals(4, store.filter(TagFilter.ALL).size());
+    }
+
+    @Test
+    public void shouldFilterOpenTasks() throws Exception {
+        both.done(true);
+
+        assertEquals(Arrays.asList(work), store.filter(TagFilter.allOf("work").open()));
+
+        both.done(false);
+        assertEquals(Arrays.asList(work, both), store.filter(TagFilter.allOf("work").open()));
+    }
+
+    @Test
+    public void shouldFollowChanges() throws Exception {
+        work.tags(ImmutableSet.of("home"));
+        store.moveUp(both);
+
+        assertEquals(ImmutableSet.of("home", "work"), store.tags());
+        assertEquals(Arrays.asList(work, both, home), store.filter(TagFilter.allOf("home")));
+        assertEquals(Arrays.asList(both), store.filter(TagFilter.allOf("work")));
+
+        LinkedTask created = store.create().tags(ImmutableSet.of("new"));
+        assertEquals(Arrays.asList(created), store.filter(TagFilter.allOf("new")));
+
+        store.remove(both);
+        assertEquals(ImmutableSet.of("home", "new"), store.tags());
+        assertEquals(Arrays.asList(work, home), store.filter(TagFilter.allOf("home")));
+    }
+
+    @Test
+    public void shouldLoadTags() throws Exception {
+        store.close();
+
+        LinkedTaskStore reloaded = new FileBasedTaskStore(path);
+        reloaded.load();
+
+        assertEquals(Arrays.asList(both), reloaded.filter(TagFilter.allOf("home", "work")));
+    }
+}
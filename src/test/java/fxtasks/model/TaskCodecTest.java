@@ -0,0 +1,166 @@
+package fxtasks.model;
+
+import static com.google.common.base.Charsets.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+
+public class TaskCodecTest {
+    private static final String JAXB_FORMAT = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" //
+            + "<linkedTask nextId=\"a82b57fb-10c5-4fcf-a3ea-fb01d9928ee7\">\n" //
+            + "    <done>true</done>\n" //
+            + "    <title>a &amp; &lt;b&gt;</title>\n" //
+            + "</linkedTask>\n";
+
+    private LinkedTask roundTrip(TaskCodec codec, LinkedTask task) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(task, out);
+        return codec.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private LinkedTask task(String title, boolean done) {
+        LinkedTask next = new LinkedTask().id(TaskId.random());
+        LinkedTask task = new LinkedTask().id(TaskId.random()).title(title).next(next);
+        task.<Boolean> getProperty("done").setValue(done);
+        return task;
+    }
+
+    private void assertTaskEquals(LinkedTask expected, LinkedTask actual) {
+        assertEquals(expected.nextId, actual.nextId);
+        for (String name : expected.propertyNames()) {
+            assertEquals(name, expected.value(name), actual.value(name));
+        }
+    }
+
+    @Test
+    public void shouldReadJaxbFormat() throws Exception {
+        LinkedTask task = new XmlTaskCodec().read(new ByteArrayInputStream(JAXB_FORMAT.getBytes(UTF_8)));
+
+        assertEquals("a & <b>", task.title());
+        assertEquals(true, task.value("done"));
+        assertEquals(TaskId.of("a82b57fb-10c5-4fcf-a3ea-fb01d9928ee7"), task.nextId());
+    }
+
+    @Test
+    public void shouldWriteJaxbFormat() throws Exception {
+        LinkedTask task = new LinkedTask().title("a & <b>");
+        task.<Boolean> getProperty("done").setValue(true);
+        task.nextId = TaskId.of("a82b57fb-10c5-4fcf-a3ea-fb01d9928ee7");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new XmlTaskCodec().write(task, out);
+
+        assertEquals(JAXB_FORMAT, new String(out.toByteArray(), UTF_8));
+    }
+
+    @Test
+    public void shouldIgnoreUnknownXmlElements() throws Exception {
+        String xml = "<linkedTask><color>red</color><title>t</title></linkedTask>";
+
+        LinkedTask task = new XmlTaskCodec().read(new ByteArrayInputStream(xml.getBytes(UTF_8)));
+
+        assertEquals("t", task.title());
+        assertNull(task.nextId());
+    }
+
+    @Test
+    public void shouldRoundTripXml() throws Exception {
+        LinkedTask task = task("some title", true);
+
+        assertTaskEquals(task, roundTrip(new XmlTaskCodec(), task));
+    }
+
+    @Test
+    public void shouldRoundTripXmlWithoutTitleAndNext() throws Exception {
+        LinkedTask task = new LinkedTask().id(TaskId.random());
+
+        assertTaskEquals(task, roundTrip(new XmlTaskCodec(), task));
+    }
+
+    @Test
+    public void shouldRoundTripBinary() throws Exception {
+        LinkedTask task = task("some title", true);
+
+        assertTaskEquals(task, roundTrip(new BinaryTaskCodec(), task));
+    }
+
+    @Test
+    public void shouldRoundTripBinaryWithoutTitleAndNext() throws Exception {
+        LinkedTask task = new LinkedTask().id(TaskId.random());
+
+        assertTaskEquals(task, roundTrip(new BinaryTaskCodec(), task));
+    }
+
+    @Test
+    public void shouldRoundTripTags() throws Exception {
+        LinkedTask task = task("tagged", false).tags(ImmutableSet.of("work", "home"));
+
+        assertTaskEquals(task, roundTrip(new XmlTaskCodec(), task));
+        assertTaskEquals(task, roundTrip(new BinaryTaskCodec(), task));
+        assertEquals("home,work", PropertyType.TAGS.format(task.tags()));
+    }
+
+    @Test
+    public void shouldReadBinaryWithStringId() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(0xF7A5);
+        out.writeByte(1);
+        out.writeBoolean(true);
+        out.writeUTF("a82b57fb-10c5-4fcf-a3ea-fb01d9928ee7");
+        out.writeShort(0);
+
+        LinkedTask task = new BinaryTaskCodec().read(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(TaskId.of("a82b57fb-10c5-4fcf-a3ea-fb01d9928ee7"), task.nextId());
+    }
+
+    @Test
+    public void shouldRoundTripLongTitleInBinary() throws Exception {
+        LinkedTask task = task(Strings.repeat("long title ", 10000), false);
+
+        assertTaskEquals(task, roundTrip(new BinaryTaskCodec(), task));
+    }
+
+    @Test
+    public void shouldReadBinaryWithShortStrings() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(0xF7A5);
+        out.writeByte(2);
+        out.writeBoolean(false);
+        out.writeShort(1);
+        out.writeUTF("title");
+        out.writeByte(PropertyType.STRING.ordinal());
+        out.writeBoolean(true);
+        out.writeUTF("old title");
+
+        LinkedTask task = new BinaryTaskCodec().read(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals("old title", task.title());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectUnknownPropertyType() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(0xF7A5);
+        out.writeByte(3);
+        out.writeBoolean(false);
+        out.writeShort(1);
+        out.writeUTF("title");
+        out.writeByte(200);
+
+        new BinaryTaskCodec().read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectXmlAsBinary() throws Exception {
+        new BinaryTaskCodec().read(new ByteArrayInputStream(JAXB_FORMAT.getBytes(UTF_8)));
+    }
+}
@@ -0,0 +1,49 @@
+package fxtasks.model;
+
+import static com.google.common.base.Charsets.*;
+import static org.junit.Assert.*;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class TaskIdTest {
+    private static final String ID = "a82b57fb-10c5-4fcf-a3ea-fb01d9928ee7";
+
+    @Test
+    public void shouldFormatAsUuid() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            UUID uuid = UUID.randomUUID();
+
+            TaskId id = TaskId.of(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+            assertEquals(uuid.toString(), id.asString());
+        }
+    }
+
+    @Test
+    public void shouldParseWhatItFormats() throws Exception {
+        assertEquals(ID, TaskId.of(ID).asString());
+        assertEquals(ID, TaskId.of(ID.getBytes(UTF_8)).asString());
+    }
+
+    @Test
+    public void shouldCanonicalize() throws Exception {
+        assertSame(TaskId.of(ID), TaskId.of(new String(ID)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonHexDigit() throws Exception {
+        TaskId.of("a82b57fb-10c5-4fcf-a3ea-fb01d9928eeX");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMissingDash() throws Exception {
+        TaskId.of("a82b57fb010c5-4fcf-a3ea-fb01d9928ee7");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyId() throws Exception {
+        TaskId.of("");
+    }
+}
@@ -0,0 +1,45 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.*;
+
+public class TaskImportTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldParseTitleAndTags() throws Exception {
+        LinkedTask task = TaskImport.parse(" Buy milk \tshopping, home,");
+
+        assertEquals("Buy milk", task.title());
+        assertEquals(ImmutableSet.of("home", "shopping"), task.tags());
+        assertEquals(ImmutableSet.of(), TaskImport.parse("Call Bob").tags());
+    }
+
+    @Test
+    public void shouldImportInBatches() throws Exception {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < 25000; i++) {
+            list.append("task ").append(i).append(i % 1000 == 0 ? "\n\n" : "\n");
+        }
+        FileBasedTaskStore store = new FileBasedTaskStore(folder.getRoot().toPath());
+
+        int count = store.importAll(TaskImport.read(new BufferedReader(new StringReader(list.toString()))));
+
+        assertEquals(25000, count);
+        FileBasedTaskStore reloaded = new FileBasedTaskStore(folder.getRoot().toPath());
+        reloaded.load();
+        List<LinkedTask> tasks = reloaded.taskList;
+        assertEquals(25000, tasks.size());
+        assertEquals("task 0", tasks.get(0).title());
+        assertEquals("task 10000", tasks.get(10000).title());
+        assertEquals("task 24999", tasks.get(24999).title());
+    }
+}
@@ -0,0 +1,73 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import javafx.collections.ListChangeListener;
+
+import org.junit.*;
+
+import com.google.common.collect.*;
+
+public class TaskListTest {
+    private final TaskList list = new TaskList();
+    private final List<String> changes = Lists.newArrayList();
+    private final LinkedTask a = new LinkedTask().title("a");
+    private final LinkedTask b = new LinkedTask().title("b");
+    private final LinkedTask c = new LinkedTask().title("c");
+    private final LinkedTask d = new LinkedTask().title("d");
+
+    @Before
+    public void fillList() {
+        list.addAll(a, b, c, d);
+        list.addListener(new ListChangeListener<LinkedTask>() {
+            @Override
+            public void onChanged(Change<? extends LinkedTask> change) {
+                while (change.next()) {
+                    StringBuilder description = new StringBuilder();
+                    if (change.wasPermutated()) {
+                        description.append("permutated");
+                        for (int i = change.getFrom(); i < change.getTo(); i++) {
+                            description.append(' ').append(change.getPermutation(i));
+                        }
+                    } else {
+                        if (change.wasRemoved())
+                            description.append("removed ").append(change.getRemoved().size()).append(' ');
+                        if (change.wasAdded())
+                            description.append("added ").append(change.getAddedSize()).append(' ');
+                        description.append("at ").append(change.getFrom());
+                    }
+                    changes.add(description.toString());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void shouldMoveDownWithPermutationOfTheRange() {
+        list.move(1, 3);
+
+        assertEquals(ImmutableList.of(a, c, d, b), list);
+        assertEquals(ImmutableList.of("permutated 3 1 2"), changes);
+    }
+
+    @Test
+    public void shouldMoveUpWithPermutationOfTheRange() {
+        list.move(2, 0);
+
+        assertEquals(ImmutableList.of(c, a, b, d), list);
+        assertEquals(ImmutableList.of("permutated 1 2 0"), changes);
+    }
+
+    @Test
+    public void shouldReportAddedAndRemovedRanges() {
+        list.add(1, new LinkedTask());
+        list.remove(1);
+        list.remove(0, 2);
+        list.clear();
+
+        assertTrue(list.isEmpty());
+        assertEquals(ImmutableList.of("added 1 at 1", "removed 1 at 1", "removed 2 at 0", "removed 2 at 0"), changes);
+    }
+}
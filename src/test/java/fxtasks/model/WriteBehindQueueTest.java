@@ -0,0 +1,103 @@
+package fxtasks.model;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.*;
+
+public class WriteBehindQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final WriteBehindQueue queue = new WriteBehindQueue(1, TimeUnit.HOURS);
+    private final List<String> written = Lists.newCopyOnWriteArrayList();
+
+    @After
+    public void closeQueue() {
+        queue.close();
+    }
+
+    private Runnable write(final String value) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                written.add(value);
+            }
+        };
+    }
+
+    @Test
+    public void shouldNotWriteBeforeDelay() throws Exception {
+        queue.schedule("a", write("a1"));
+
+        assertEquals(ImmutableList.of(), written);
+        assertEquals(1, queue.pendingCount());
+    }
+
+    @Test
+    public void shouldCoalesceWritesForSameKey() throws Exception {
+        queue.schedule("a", write("a1"));
+        queue.schedule("b", write("b1"));
+        queue.schedule("a", write("a2"));
+        queue.schedule("a", write("a3"));
+
+        queue.flush();
+
+        assertEquals(ImmutableList.of("a3", "b1"), written);
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    public void shouldWriteAfterDelay() throws Exception {
+        WriteBehindQueue fast = new WriteBehindQueue(10, TimeUnit.MILLISECONDS);
+        fast.schedule("a", write("a1"));
+        fast.schedule("a", write("a2"));
+
+        for (int i = 0; i < 100 && written.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(ImmutableList.of("a2"), written);
+        fast.close();
+    }
+
+    @Test
+    public void shouldFlushOnClose() throws Exception {
+        queue.schedule("a", write("a1"));
+
+        queue.close();
+
+        assertEquals(ImmutableList.of("a1"), written);
+    }
+
+    @Test
+    public void shouldWaitForTheCommitterOnShutdown() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("file");
+        final GroupCommitter committer = new GroupCommitter();
+        queue.commitsTo(committer);
+        queue.schedule("a", new Runnable() {
+            @Override
+            public void run() {
+                committer.begin().write(file, new byte[] { 1 }).commit();
+            }
+        });
+
+        queue.flushDurably();
+
+        assertTrue(Files.exists(file));
+        committer.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectWritesAfterClose() throws Exception {
+        queue.close();
+
+        queue.schedule("a", write("a1"));
+    }
+}